@@ -1,33 +1,82 @@
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class DataProcessor {
 
+    // Inputs shorter than this stay on the calling thread even in parallel mode
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+    // How many elements a search leaf scans between checks for an earlier match
+    private static final int SEARCH_CHECK_INTERVAL = 4096;
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    /**
+     * Creates a processor that runs every operation on the calling thread.
+     */
+    public DataProcessor() {
+        this.pool = null;
+        this.parallelThreshold = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Creates a processor that runs array operations on the given pool once an
+     * input has at least parallelThreshold elements. Smaller inputs, and the
+     * leaves of each split, are processed sequentially.
+     */
+    public DataProcessor(ForkJoinPool pool, int parallelThreshold) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool cannot be null.");
+        }
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be at least 1.");
+        }
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    private boolean runInParallel(int[] arr) {
+        return pool != null && arr.length >= parallelThreshold;
+    }
+
     // --- Array Operations ---
 
     public double findAverage(int[] arr) {
         if (arr.length == 0) return 0;
-        int sum = 0;
-        for (int num : arr) sum += num;
+        long sum = runInParallel(arr)
+                ? pool.invoke(new SumTask(arr, 0, arr.length, parallelThreshold))
+                : sum(arr, 0, arr.length);
         return (double) sum / arr.length;
     }
 
     public int findMaximum(int[] arr) {
-        int max = arr[0];
-        for (int num : arr) {
-            if (num > max) max = num;
-        }
-        return max;
+        return runInParallel(arr)
+                ? pool.invoke(new MaxTask(arr, 0, arr.length, parallelThreshold))
+                : max(arr, 0, arr.length);
     }
 
     public int searchArray(int[] arr, int target) {
-        for (int i = 0; i < arr.length; i++) {
-            if (arr[i] == target) return i; // Returns index
-        }
-        return -1;
+        if (!runInParallel(arr)) return search(arr, target, 0, arr.length);
+
+        // Leaves publish the lowest matching index here, so the result matches the sequential scan
+        AtomicInteger found = new AtomicInteger(Integer.MAX_VALUE);
+        pool.invoke(new SearchTask(arr, target, 0, arr.length, parallelThreshold, found));
+        return found.get() == Integer.MAX_VALUE ? -1 : found.get();
     }
 
     public void sort(int[] arr) {
-        Arrays.sort(arr);
+        if (runInParallel(arr)) {
+            // Running parallelSort inside the pool makes its forked subtasks use this pool
+            pool.invoke(ForkJoinTask.adapt(() -> Arrays.parallelSort(arr)));
+        } else {
+            Arrays.sort(arr);
+        }
     }
 
     public void reverse(int[] arr) {
@@ -52,10 +101,165 @@ class DataProcessor {
         Arrays.sort(charArray);
         return new String(charArray);
     }
+
+    /*
+     * Sequential kernels over [from, to). They keep several independent
+     * accumulators per loop iteration, which breaks the dependency chain
+     * between elements so the CPU can overlap the work and the JIT is free
+     * to vectorize the body. Both modes use them: the parallel tasks call
+     * them on their leaves.
+     */
+
+    private static long sum(int[] arr, int from, int to) {
+        // A long accumulator cannot overflow: 2^31 elements of 2^31 still fit in 63 bits
+        long sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = from;
+        for (int limit = to - 3; i < limit; i += 4) {
+            sum0 += arr[i];
+            sum1 += arr[i + 1];
+            sum2 += arr[i + 2];
+            sum3 += arr[i + 3];
+        }
+        for (; i < to; i++) sum0 += arr[i];
+        return sum0 + sum1 + sum2 + sum3;
+    }
+
+    private static int max(int[] arr, int from, int to) {
+        int max0 = arr[from], max1 = max0, max2 = max0, max3 = max0;
+        int i = from + 1;
+        for (int limit = to - 3; i < limit; i += 4) {
+            max0 = Math.max(max0, arr[i]);
+            max1 = Math.max(max1, arr[i + 1]);
+            max2 = Math.max(max2, arr[i + 2]);
+            max3 = Math.max(max3, arr[i + 3]);
+        }
+        for (; i < to; i++) max0 = Math.max(max0, arr[i]);
+        return Math.max(Math.max(max0, max1), Math.max(max2, max3));
+    }
+
+    private static int search(int[] arr, int target, int from, int to) {
+        int i = from;
+        // Test eight elements per branch; the non-short-circuit '|' keeps the block branch-free
+        for (int limit = to - 7; i < limit; i += 8) {
+            if ((arr[i] == target) | (arr[i + 1] == target) | (arr[i + 2] == target) | (arr[i + 3] == target)
+                    | (arr[i + 4] == target) | (arr[i + 5] == target) | (arr[i + 6] == target) | (arr[i + 7] == target)) {
+                break;
+            }
+        }
+        for (; i < to; i++) {
+            if (arr[i] == target) return i; // Returns index
+        }
+        return -1;
+    }
+
+    /*
+     * Fork/join tasks: each halves its range until it is below the threshold,
+     * then runs the sequential kernel and combines results up the tree.
+     */
+
+    private static class SumTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] arr;
+        private final int from, to, threshold;
+
+        SumTask(int[] arr, int from, int to, int threshold) {
+            this.arr = arr;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= threshold) return sum(arr, from, to);
+            int mid = (from + to) >>> 1;
+            SumTask left = new SumTask(arr, from, mid, threshold);
+            left.fork();
+            long right = new SumTask(arr, mid, to, threshold).compute();
+            return left.join() + right;
+        }
+    }
+
+    private static class MaxTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] arr;
+        private final int from, to, threshold;
+
+        MaxTask(int[] arr, int from, int to, int threshold) {
+            this.arr = arr;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= threshold) return max(arr, from, to);
+            int mid = (from + to) >>> 1;
+            MaxTask left = new MaxTask(arr, from, mid, threshold);
+            left.fork();
+            int right = new MaxTask(arr, mid, to, threshold).compute();
+            return Math.max(left.join(), right);
+        }
+    }
+
+    /**
+     * Parallel scan that stops early: once a match is published, every range
+     * that starts after it is skipped, and running leaves give up at their
+     * next checkpoint.
+     */
+    private static class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] arr;
+        private final int target;
+        private final int from, to, threshold;
+        private final AtomicInteger found;
+
+        SearchTask(int[] arr, int target, int from, int to, int threshold, AtomicInteger found) {
+            this.arr = arr;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (found.get() < from) return;
+            if (to - from > threshold) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SearchTask(arr, target, from, mid, threshold, found),
+                          new SearchTask(arr, target, mid, to, threshold, found));
+                return;
+            }
+            for (int start = from; start < to; start += SEARCH_CHECK_INTERVAL) {
+                if (found.get() < start) return;
+                int index = search(arr, target, start, Math.min(start + SEARCH_CHECK_INTERVAL, to));
+                if (index >= 0) {
+                    found.accumulateAndGet(index, Math::min);
+                    return;
+                }
+            }
+        }
+    }
 }
 
 public class Program1 {
+
+    // Benchmarked results feed this field so the JIT cannot drop the work
+    private static volatile long sink;
+
     public static void main(String[] args) {
+        // "java Program1.java bench [sizes...]" times the array operations instead of running the demo
+        if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+            runBenchmarks(args);
+            return;
+        }
+
         DataProcessor processor = new DataProcessor();
         
         // Example Data
@@ -77,4 +281,59 @@ public class Program1 {
         System.out.println("Reversed String: " + processor.reverse(text));
         System.out.println("Sorted String: " + processor.sort(text));
     }
-}
+
+    /**
+     * Times the array operations over random inputs of each requested size.
+     */
+    private static void runBenchmarks(String[] args) {
+        int[] sizes = {1_000, 100_000, 10_000_000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        DataProcessor sequential = new DataProcessor();
+        DataProcessor parallel = new DataProcessor(ForkJoinPool.commonPool(), DataProcessor.DEFAULT_PARALLEL_THRESHOLD);
+        Random random = new Random(42);
+
+        for (int size : sizes) {
+            int[] data = random.ints(size, 0, Integer.MAX_VALUE).toArray();
+            int[] scratch = new int[size];
+            // Repeat small inputs so each timed run is long enough to measure
+            int reps = Math.max(1, 10_000_000 / size);
+
+            System.out.printf("%n--- n = %,d (x%d per run) ---%n", size, reps);
+            for (DataProcessor processor : new DataProcessor[] {sequential, parallel}) {
+                String mode = processor == sequential ? "" : " [parallel]";
+                benchmark("findAverage" + mode, reps, () -> sink += (long) processor.findAverage(data));
+                benchmark("findMaximum" + mode, reps, () -> sink += processor.findMaximum(data));
+                // Inputs are non-negative, so searching for -1 always scans the whole array
+                benchmark("searchArray (miss)" + mode, reps, () -> sink += processor.searchArray(data, -1));
+                benchmark("sort (incl. copy)" + mode, reps, () -> {
+                    System.arraycopy(data, 0, scratch, 0, size);
+                    processor.sort(scratch);
+                    sink += scratch[0];
+                });
+            }
+        }
+    }
+
+    /**
+     * Runs task reps times per measurement: 3 warm-up runs for the JIT, then 7 timed
+     * runs, reporting the best and median time per call.
+     */
+    private static void benchmark(String label, int reps, Runnable task) {
+        final int warmups = 3;
+        final int runs = 7;
+        for (int i = 0; i < warmups * reps; i++) task.run();
+
+        long[] times = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) task.run();
+            times[r] = (System.nanoTime() - start) / reps;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-36s best %,12.4f ms   median %,12.4f ms%n", label, times[0] / 1e6, times[runs / 2] / 1e6);
+    }
+}
\ No newline at end of file
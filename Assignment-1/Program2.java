@@ -1,11 +1,42 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class Matrix {
+
+    /**
+     * The kernels available to multiply(). NAIVE is the textbook i-j-k loop,
+     * BLOCKED walks cache-sized tiles in i-k-j order, and PARALLEL runs the
+     * BLOCKED kernel with row bands split across a ForkJoinPool.
+     */
+    public enum Strategy { NAIVE, BLOCKED, PARALLEL }
+
+    // Tile edge for the blocked kernel: three 64x64 double tiles fit in a typical L2 cache
+    private static final int BLOCK_SIZE = 64;
+
+    // Used by multiply(Matrix); callers that want another kernel pass it explicitly
+    private static final Strategy DEFAULT_STRATEGY = Strategy.BLOCKED;
+
+    // Benchmarked results feed this field so the JIT cannot drop the work
+    private static volatile double sink;
+
     private final int rows;
     private final int cols;
-    private final double[][] data;
+
+    /*
+     * Elements live in one flat array. Element (i, j) is stored at
+     * data[offset + i * rowStride + j * colStride], so a transpose is
+     * just the same array with the two strides swapped.
+     */
+    private final double[] data;
+    private final int offset;
+    private final int rowStride;
+    private final int colStride;
 
     /**
      * Constructor to initialize the matrix.
-     * Takes a 2D double array and creates a deep copy.
+     * Takes a 2D double array and copies it into flat row-major storage.
      */
     public Matrix(double[][] inputData) {
         if (inputData == null || inputData.length == 0) {
@@ -14,56 +45,218 @@ public class Matrix {
 
         this.rows = inputData.length;
         this.cols = inputData[0].length;
-        this.data = new double[rows][cols];
+        this.data = new double[Math.multiplyExact(rows, cols)];
+        this.offset = 0;
+        this.rowStride = cols;
+        this.colStride = 1;
 
         for (int i = 0; i < rows; i++) {
             if (inputData[i].length != cols) {
                 throw new IllegalArgumentException("All rows must have the same number of columns.");
             }
-            for (int j = 0; j < cols; j++) {
-                this.data[i][j] = inputData[i][j];
-            }
+            System.arraycopy(inputData[i], 0, this.data, i * cols, cols);
         }
     }
 
     /**
-     * Returns a new Matrix that is the transpose of the current one.
+     * Wraps existing storage without copying. Used for views and kernel results.
+     */
+    private Matrix(int rows, int cols, double[] data, int offset, int rowStride, int colStride) {
+        this.rows = rows;
+        this.cols = cols;
+        this.data = data;
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.colStride = colStride;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Returns the element at the given row and column.
+     */
+    public double get(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("Index (" + row + ", " + col + ") is outside a "
+                + rows + "x" + cols + " matrix.");
+        }
+        return data[offset + row * rowStride + col * colStride];
+    }
+
+    /**
+     * Returns the transpose of the current one as a view sharing the same storage.
+     * This is O(1): only the strides are swapped.
      */
     public Matrix transpose() {
-        double[][] transposedData = new double[this.cols][this.rows];
+        return new Matrix(this.cols, this.rows, this.data, this.offset, this.colStride, this.rowStride);
+    }
 
-        for (int i = 0; i < this.rows; i++) {
-            for (int j = 0; j < this.cols; j++) {
-                transposedData[j][i] = this.data[i][j];
+    /**
+     * True when elements are laid out row by row with no gaps, which is what the kernels expect.
+     */
+    private boolean isRowMajor() {
+        return colStride == 1 && rowStride == cols;
+    }
+
+    /**
+     * Returns a dense row-major copy of the elements starting at index 0.
+     * Row-major matrices starting at index 0 are returned as-is.
+     */
+    private double[] rowMajorData() {
+        if (isRowMajor() && offset == 0 && data.length == rows * cols) {
+            return data;
+        }
+        double[] packed = new double[rows * cols];
+        int dst = 0;
+        for (int i = 0; i < rows; i++) {
+            int src = offset + i * rowStride;
+            for (int j = 0; j < cols; j++, src += colStride) {
+                packed[dst++] = data[src];
             }
         }
-
-        return new Matrix(transposedData);
+        return packed;
     }
 
     /**
-     * Multiplies this matrix by another matrix.
+     * Multiplies this matrix by another matrix using the BLOCKED kernel.
      */
     public Matrix multiply(Matrix other) {
+        return multiply(other, DEFAULT_STRATEGY);
+    }
+
+    /**
+     * Multiplies this matrix by another matrix using the given strategy.
+     * PARALLEL runs on the common ForkJoinPool.
+     */
+    public Matrix multiply(Matrix other, Strategy strategy) {
+        return multiply(other, strategy, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Multiplies this matrix by another matrix using the given strategy.
+     * PARALLEL runs its row bands on the given pool; the other kernels ignore it.
+     */
+    public Matrix multiply(Matrix other, Strategy strategy, ForkJoinPool pool) {
         // Dimension check: (m x n) * (n x p)
         if (this.cols != other.rows) {
             throw new IllegalArgumentException(
-                "Cannot multiply: Columns of the first matrix (" + this.cols + 
+                "Cannot multiply: Columns of the first matrix (" + this.cols +
                 ") must match rows of the second matrix (" + other.rows + ")."
             );
         }
+        if (strategy == null) {
+            throw new IllegalArgumentException("Strategy cannot be null.");
+        }
+        if (strategy == Strategy.PARALLEL && pool == null) {
+            throw new IllegalArgumentException("The PARALLEL strategy needs a ForkJoinPool.");
+        }
+
+        // Strided views (e.g. transposes) are packed once so every kernel reads unit-stride rows
+        double[] a = this.rowMajorData();
+        double[] b = other.rowMajorData();
+        double[] c = new double[Math.multiplyExact(this.rows, other.cols)];
+
+        switch (strategy) {
+            case NAIVE:
+                multiplyNaive(a, b, c, this.rows, this.cols, other.cols);
+                break;
+            case BLOCKED:
+                multiplyBlocked(a, b, c, 0, this.rows, this.cols, other.cols);
+                break;
+            case PARALLEL:
+                pool.invoke(new MultiplyTask(a, b, c, 0, this.rows, this.cols, other.cols));
+                break;
+        }
 
-        double[][] resultData = new double[this.rows][other.cols];
+        // The result array is freshly allocated, so it is wrapped rather than copied
+        return new Matrix(this.rows, other.cols, c, 0, other.cols, 1);
+    }
 
-        for (int i = 0; i < this.rows; i++) {
-            for (int j = 0; j < other.cols; j++) {
-                for (int k = 0; k < this.cols; k++) {
-                    resultData[i][j] += this.data[i][k] * other.data[k][j];
+    private static void multiplyNaive(double[] a, double[] b, double[] c,
+                                      int outRows, int inner, int outCols) {
+        for (int i = 0; i < outRows; i++) {
+            for (int j = 0; j < outCols; j++) {
+                double sum = 0;
+                for (int k = 0; k < inner; k++) {
+                    sum += a[i * inner + k] * b[k * outCols + j];
+                }
+                c[i * outCols + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * Tiled i-k-j kernel over rows [rowStart, rowEnd) of the result.
+     * The innermost loop walks a row of b and a row of c sequentially,
+     * so both stay in cache and the JIT can vectorize it.
+     */
+    private static void multiplyBlocked(double[] a, double[] b, double[] c,
+                                        int rowStart, int rowEnd, int inner, int outCols) {
+        for (int ii = rowStart; ii < rowEnd; ii += BLOCK_SIZE) {
+            int iMax = Math.min(ii + BLOCK_SIZE, rowEnd);
+            for (int kk = 0; kk < inner; kk += BLOCK_SIZE) {
+                int kMax = Math.min(kk + BLOCK_SIZE, inner);
+                for (int jj = 0; jj < outCols; jj += BLOCK_SIZE) {
+                    int jMax = Math.min(jj + BLOCK_SIZE, outCols);
+                    for (int i = ii; i < iMax; i++) {
+                        int aRow = i * inner;
+                        int cRow = i * outCols;
+                        for (int k = kk; k < kMax; k++) {
+                            double aik = a[aRow + k];
+                            int bRow = k * outCols;
+                            for (int j = jj; j < jMax; j++) {
+                                c[cRow + j] += aik * b[bRow + j];
+                            }
+                        }
+                    }
                 }
             }
         }
+    }
+
+    /**
+     * Splits the result rows into bands of whole tiles and runs the blocked
+     * kernel on each band. Bands write disjoint rows, so no locking is needed.
+     */
+    private static class MultiplyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] a;
+        private final double[] b;
+        private final double[] c;
+        private final int rowStart;
+        private final int rowEnd;
+        private final int inner;
+        private final int outCols;
 
-        return new Matrix(resultData);
+        MultiplyTask(double[] a, double[] b, double[] c, int rowStart, int rowEnd, int inner, int outCols) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.inner = inner;
+            this.outCols = outCols;
+        }
+
+        @Override
+        protected void compute() {
+            int rowCount = rowEnd - rowStart;
+            if (rowCount <= BLOCK_SIZE) {
+                multiplyBlocked(a, b, c, rowStart, rowEnd, inner, outCols);
+                return;
+            }
+            // Split on a tile boundary so each band keeps full tiles
+            int mid = rowStart + (rowCount / 2 + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            invokeAll(new MultiplyTask(a, b, c, rowStart, mid, inner, outCols),
+                      new MultiplyTask(a, b, c, mid, rowEnd, inner, outCols));
+        }
     }
 
     /**
@@ -73,11 +266,79 @@ public class Matrix {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                sb.append(String.format("%8.2f", data[i][j])).append(" ");
+            int index = offset + i * rowStride;
+            for (int j = 0; j < cols; j++, index += colStride) {
+                sb.append(String.format("%8.2f", data[index])).append(" ");
             }
             sb.append("\n");
         }
         return sb.toString();
     }
+
+    public static void main(String[] args) {
+        // "java Matrix bench [sizes...]" times the kernels instead of running the demo
+        if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+            runBenchmarks(args);
+            return;
+        }
+
+        Matrix a = new Matrix(new double[][] {{1, 2, 3}, {4, 5, 6}});
+        Matrix b = new Matrix(new double[][] {{7, 8}, {9, 10}, {11, 12}});
+        System.out.println("A =\n" + a);
+        System.out.println("B =\n" + b);
+        System.out.println("A x B =\n" + a.multiply(b));
+        System.out.println("transpose(A) =\n" + a.transpose());
+    }
+
+    /**
+     * Benchmarks multiply() under each strategy and transpose() for square matrices of each requested size.
+     */
+    private static void runBenchmarks(String[] args) {
+        int[] sizes = {128, 256, 512};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        Random random = new Random(42);
+        for (int n : sizes) {
+            Matrix a = randomMatrix(n, n, random);
+            Matrix b = randomMatrix(n, n, random);
+
+            System.out.printf("%n--- %d x %d ---%n", n, n);
+            for (Strategy strategy : Strategy.values()) {
+                benchmark("multiply " + strategy, 1, () -> sink += a.multiply(b, strategy).get(0, 0));
+            }
+            benchmark("multiply BLOCKED by transposed view", 1,
+                () -> sink += a.multiply(b.transpose(), Strategy.BLOCKED).get(0, 0));
+            benchmark("transpose", 1, () -> sink += a.transpose().get(0, n - 1));
+        }
+    }
+
+    private static Matrix randomMatrix(int rows, int cols, Random random) {
+        double[][] values = new double[rows][cols];
+        for (double[] row : values) {
+            for (int j = 0; j < cols; j++) row[j] = random.nextDouble();
+        }
+        return new Matrix(values);
+    }
+
+    /**
+     * Runs task reps times per measurement: 3 warm-up runs for the JIT, then 7 timed
+     * runs, reporting the best and median time per call.
+     */
+    private static void benchmark(String label, int reps, Runnable task) {
+        final int warmups = 3;
+        final int runs = 7;
+        for (int i = 0; i < warmups * reps; i++) task.run();
+
+        long[] times = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) task.run();
+            times[r] = (System.nanoTime() - start) / reps;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-36s best %,12.4f ms   median %,12.4f ms%n", label, times[0] / 1e6, times[runs / 2] / 1e6);
+    }
 }
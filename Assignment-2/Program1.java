@@ -1,11 +1,27 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
 public class PrimeFinderDemo {
 
+    // Shared sieve used by every thread and task below; it can enumerate primes up to 10^12
+    static final SegmentedSieve SIEVE = new SegmentedSieve(1_000_000_000_000L);
+
+    // Trial-division pre-filter for isPrime(long); catches most composites before any modular arithmetic
+    private static final int[] SMALL_PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47};
+
+    // Miller-Rabin with these seven bases gives the exact answer for every n < 2^64 (Jim Sinclair's set)
+    private static final long[] MILLER_RABIN_BASES = {2, 325, 9375, 28178, 450775, 9780504, 1795265022};
+
+    // Benchmarked results feed this field so the JIT cannot drop the work
+    private static volatile long sink;
+
     /**
      * Shared utility method to check if a number is prime.
      */
@@ -14,12 +30,327 @@ public class PrimeFinderDemo {
         if (number == 2) return true;
         if (number % 2 == 0) return false;
         
-        for (int i = 3; i <= Math.sqrt(number); i += 2) {
+        // "i <= number / i" is the same bound as i <= sqrt(number) without a sqrt per iteration
+        for (int i = 3; i <= number / i; i += 2) {
             if (number % i == 0) return false;
         }
         return true;
     }
 
+    /**
+     * Checks whether a single long is prime with a deterministic Miller-Rabin test.
+     * Runs in O(log n) multiplications, so it suits isolated large values where
+     * sieving or trial division up to sqrt(n) would be far too slow.
+     */
+    public static boolean isPrime(long number) {
+        if (number < 2) return false;
+        for (int p : SMALL_PRIMES) {
+            if (number == p) return true;
+            if (number % p == 0) return false;
+        }
+        // Anything left below 53^2 has no factor up to its square root
+        if (number < 53 * 53) return true;
+
+        Montgomery mont = new Montgomery(number);
+        long d = number - 1;
+        int twos = Long.numberOfTrailingZeros(d);
+        d >>= twos;
+
+        nextBase:
+        for (long base : MILLER_RABIN_BASES) {
+            long a = base % number;
+            if (a == 0) continue; // The base is a multiple of n, so it proves nothing
+            long x = mont.pow(mont.toMontgomery(a), d);
+            if (x == mont.one || x == mont.minusOne) continue;
+            for (int r = 1; r < twos; r++) {
+                x = mont.multiply(x, x);
+                if (x == mont.minusOne) continue nextBase;
+            }
+            return false; // a is a witness that n is composite
+        }
+        return true;
+    }
+
+    /**
+     * Modular arithmetic for an odd modulus n < 2^63 in Montgomery form.
+     * A value a is stored as a * 2^64 mod n, which turns "multiply then reduce
+     * mod n" into two 64x64-bit multiplications and a shift. That avoids a
+     * 128-bit division and cannot overflow.
+     */
+    private static final class Montgomery {
+        private final long n;
+        private final long negInverse; // -n^-1 mod 2^64
+        private final long rSquared;   // 2^128 mod n, used to convert into Montgomery form
+        final long one;                // 1 in Montgomery form
+        final long minusOne;           // n - 1 in Montgomery form
+
+        Montgomery(long n) {
+            this.n = n;
+            // Newton's iteration doubles the correct low bits each step: 3 -> 6 -> 12 -> 24 -> 48 -> 96
+            long inverse = n;
+            for (int i = 0; i < 5; i++) inverse *= 2 - n * inverse;
+            this.negInverse = -inverse;
+
+            this.one = Long.remainderUnsigned(-n, n); // 2^64 mod n
+            long r = one;
+            for (int i = 0; i < 64; i++) r = addMod(r, r);
+            this.rSquared = r;
+            this.minusOne = n - one;
+        }
+
+        private long addMod(long a, long b) {
+            long sum = a + b; // a, b < n < 2^63, so the unsigned sum cannot wrap
+            return Long.compareUnsigned(sum, n) >= 0 ? sum - n : sum;
+        }
+
+        long toMontgomery(long a) {
+            return multiply(a, rSquared);
+        }
+
+        /**
+         * Returns a * b / 2^64 mod n (REDC), which is the Montgomery product of a and b.
+         */
+        long multiply(long a, long b) {
+            long high = Math.multiplyHigh(a, b); // a, b < 2^63, so the signed high word is the unsigned one
+            long low = a * b;
+            long m = low * negInverse;
+            // Unsigned high word of m * n; m may have its top bit set
+            long mnHigh = Math.multiplyHigh(m, n) + ((m >> 63) & n);
+            // low + (m * n) mod 2^64 is 0 by construction, so it carries exactly when low != 0
+            long t = high + mnHigh + (low != 0 ? 1 : 0);
+            return Long.compareUnsigned(t, n) >= 0 ? t - n : t;
+        }
+
+        long pow(long base, long exponent) {
+            long result = one;
+            while (exponent > 0) {
+                if ((exponent & 1) != 0) result = multiply(result, base);
+                base = multiply(base, base);
+                exponent >>= 1;
+            }
+            return result;
+        }
+    }
+
+    /* * 0. SEGMENTED SIEVE OF ERATOSTHENES
+     * Instead of testing each number on its own, we cross out the multiples of
+     * every small prime. The range is processed one cache-sized segment at a
+     * time, and each segment is a bitset holding only the odd numbers, so one
+     * 32 KB segment covers 524,288 integers.
+     */
+    static final class SegmentedSieve {
+        private static final int SEGMENT_WORDS = 32 * 1024 / Long.BYTES;
+        private static final int SEGMENT_BITS = SEGMENT_WORDS * Long.SIZE;
+        // Base primes up to 10^8: a 100 MB sieve once, then about 5.8 million ints
+        static final long MAX_LIMIT = 10_000_000_000_000_000L;
+
+        private final long limit;
+        private final int[] basePrimes; // Odd primes up to sqrt(limit)
+
+        SegmentedSieve(long limit) {
+            if (limit < 2 || limit > MAX_LIMIT) {
+                throw new IllegalArgumentException("Sieve limit must be between 2 and " + MAX_LIMIT + " (10^16).");
+            }
+            this.limit = limit;
+            this.basePrimes = oddPrimesUpTo((int) Math.sqrt((double) limit) + 1);
+        }
+
+        /**
+         * Simple sieve for the base primes; they are few enough (about 78,000 for 10^12) to keep in an int[].
+         */
+        private static int[] oddPrimesUpTo(int n) {
+            boolean[] composite = new boolean[n + 1];
+            int count = 0;
+            for (int i = 3; i <= n; i += 2) {
+                if (composite[i]) continue;
+                count++;
+                for (long j = (long) i * i; j <= n; j += 2L * i) composite[(int) j] = true;
+            }
+            int[] primes = new int[count];
+            for (int i = 3, k = 0; i <= n; i += 2) {
+                if (!composite[i]) primes[k++] = i;
+            }
+            return primes;
+        }
+
+        /**
+         * Calls action with every prime in [from, to], in ascending order.
+         * Safe to call from many threads at once: each call sieves into its own segment.
+         */
+        void forEachPrime(long from, long to, LongConsumer action) {
+            if (to > limit) {
+                throw new IllegalArgumentException("Range end " + to + " exceeds the sieve limit " + limit + ".");
+            }
+            if (from <= 2 && to >= 2) action.accept(2);
+
+            long[] segment = new long[SEGMENT_WORDS];
+            // Bit i of a segment starting at the odd number low stands for low + 2i
+            for (long low = Math.max(3, from) | 1; low <= to; low += 2L * SEGMENT_BITS) {
+                long high = Math.min(to, low + 2L * SEGMENT_BITS - 1);
+                int bits = sieveSegment(segment, low, high);
+                for (int w = 0; w * Long.SIZE < bits; w++) {
+                    long primesInWord = ~segment[w];
+                    if ((w + 1) * Long.SIZE > bits) primesInWord &= -1L >>> (Long.SIZE - (bits - w * Long.SIZE));
+                    while (primesInWord != 0) {
+                        int bit = Long.numberOfTrailingZeros(primesInWord);
+                        action.accept(low + 2L * (w * Long.SIZE + bit));
+                        primesInWord &= primesInWord - 1;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Counts the primes in [from, to] without visiting them one by one.
+         */
+        long countPrimes(long from, long to) {
+            if (to > limit) {
+                throw new IllegalArgumentException("Range end " + to + " exceeds the sieve limit " + limit + ".");
+            }
+            long count = (from <= 2 && to >= 2) ? 1 : 0;
+
+            long[] segment = new long[SEGMENT_WORDS];
+            for (long low = Math.max(3, from) | 1; low <= to; low += 2L * SEGMENT_BITS) {
+                long high = Math.min(to, low + 2L * SEGMENT_BITS - 1);
+                int bits = sieveSegment(segment, low, high);
+                int fullWords = bits / Long.SIZE;
+                for (int w = 0; w < fullWords; w++) count += Long.bitCount(~segment[w]);
+                int rest = bits % Long.SIZE;
+                if (rest > 0) count += Long.bitCount(~segment[fullWords] & (-1L >>> (Long.SIZE - rest)));
+            }
+            return count;
+        }
+
+        /**
+         * Marks the odd composites in [low, high] (low odd) and returns how many bits are in use.
+         * A set bit means composite.
+         */
+        private int sieveSegment(long[] segment, long low, long high) {
+            int bits = (int) ((high - low) / 2 + 1);
+            Arrays.fill(segment, 0, (bits + Long.SIZE - 1) / Long.SIZE, 0L);
+            if (low == 1) segment[0] |= 1L; // 1 is not prime
+
+            for (int p : basePrimes) {
+                long square = (long) p * p;
+                if (square > high) break;
+                // First odd multiple of p inside the segment, but never p itself
+                long start = Math.max(square, (low + p - 1) / p * p);
+                if ((start & 1) == 0) start += p;
+                for (long index = (start - low) / 2; index < bits; index += p) {
+                    segment[(int) (index >>> 6)] |= 1L << index;
+                }
+            }
+            return bits;
+        }
+    }
+
+    /**
+     * Growable list of primes stored as primitive longs, so no value is ever boxed.
+     * Values live in fixed-size chunks: growing never copies existing values, and
+     * append() hands over another buffer's chunks by reference instead of copying them.
+     */
+    static final class PrimeBuffer implements LongConsumer {
+        private static final int CHUNK_SIZE = 1 << 13;
+
+        private long[][] chunks = new long[4][];
+        private int[] chunkLengths = new int[4];
+        private int chunkCount;
+        private long size;
+
+        @Override
+        public void accept(long prime) {
+            if (chunkCount == 0 || chunkLengths[chunkCount - 1] == chunks[chunkCount - 1].length) {
+                addChunk(new long[CHUNK_SIZE], 0);
+            }
+            chunks[chunkCount - 1][chunkLengths[chunkCount - 1]++] = prime;
+            size++;
+        }
+
+        /**
+         * Moves every value of other to the end of this buffer without copying them.
+         * other must not be used afterwards.
+         */
+        void append(PrimeBuffer other) {
+            for (int c = 0; c < other.chunkCount; c++) {
+                addChunk(other.chunks[c], other.chunkLengths[c]);
+            }
+            size += other.size;
+        }
+
+        private void addChunk(long[] chunk, int length) {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                chunkLengths = Arrays.copyOf(chunkLengths, chunkCount * 2);
+            }
+            chunks[chunkCount] = chunk;
+            chunkLengths[chunkCount++] = length;
+        }
+
+        long size() {
+            return size;
+        }
+
+        long last() {
+            if (size == 0) throw new IllegalStateException("The buffer is empty.");
+            return chunks[chunkCount - 1][chunkLengths[chunkCount - 1] - 1];
+        }
+
+        void forEach(LongConsumer action) {
+            for (int c = 0; c < chunkCount; c++) {
+                long[] chunk = chunks[c];
+                for (int i = 0, length = chunkLengths[c]; i < length; i++) action.accept(chunk[i]);
+            }
+        }
+
+        /**
+         * Streams the values as "[2, 3, 5]" one chunk at a time, so huge results
+         * are never formatted into a single String.
+         */
+        void writeTo(Appendable out) throws IOException {
+            StringBuilder text = new StringBuilder();
+            out.append('[');
+            boolean first = true;
+            for (int c = 0; c < chunkCount; c++) {
+                long[] chunk = chunks[c];
+                for (int i = 0, length = chunkLengths[c]; i < length; i++) {
+                    if (!first) text.append(", ");
+                    text.append(chunk[i]);
+                    first = false;
+                }
+                out.append(text);
+                text.setLength(0);
+            }
+            out.append(']');
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            try {
+                writeTo(text);
+            } catch (IOException e) {
+                throw new AssertionError("StringBuilder does not throw IOException", e);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Prints "[label] Primes found: [...]", streaming the buffer straight into System.out.
+     * Holding System.out's lock keeps each line whole while other workers print.
+     */
+    static void printPrimes(String label, PrimeBuffer primes) {
+        synchronized (System.out) {
+            System.out.print("[" + label + "] Primes found: ");
+            try {
+                primes.writeTo(System.out);
+            } catch (IOException e) {
+                throw new AssertionError("PrintStream does not throw IOException", e);
+            }
+            System.out.println();
+        }
+    }
+
     /* * 1. EXTENDING THE THREAD CLASS
      * We create a custom thread by inheriting from java.lang.Thread.
      */
@@ -35,11 +366,9 @@ public class PrimeFinderDemo {
 
         @Override
         public void run() {
-            List<Integer> primes = new ArrayList<>();
-            for (int i = startRange; i <= endRange; i++) {
-                if (isPrime(i)) primes.add(i);
-            }
-            System.out.printf("[%s] Primes found: %s%n", getName(), primes);
+            PrimeBuffer primes = new PrimeBuffer();
+            SIEVE.forEachPrime(startRange, endRange, primes);
+            printPrimes(getName(), primes);
         }
     }
 
@@ -60,17 +389,70 @@ public class PrimeFinderDemo {
 
         @Override
         public void run() {
-            List<Integer> primes = new ArrayList<>();
-            for (int i = startRange; i <= endRange; i++) {
-                if (isPrime(i)) primes.add(i);
-            }
+            PrimeBuffer primes = new PrimeBuffer();
+            SIEVE.forEachPrime(startRange, endRange, primes);
             // Thread.currentThread().getName() gets the name of the thread executing this Runnable
-            System.out.printf("[%s executing %s] Primes found: %s%n", 
-                    Thread.currentThread().getName(), taskName, primes);
+            // (virtual threads are unnamed, so they are shown with their carrier thread instead)
+            Thread current = Thread.currentThread();
+            String worker = current.getName().isEmpty() ? current.toString() : current.getName();
+            printPrimes(worker + " executing " + taskName, primes);
+        }
+    }
+
+    /* * 4. FORK/JOIN WITH WORK STEALING
+     * Instead of handing out fixed ranges by hand, a RecursiveTask keeps halving
+     * its range until the pieces are small. Idle workers steal pending halves
+     * from busy ones, so the pool stays balanced even though some ranges cost
+     * more to sieve than others. Joining left before right keeps results in order.
+     */
+    static class PrimeRangeTask extends RecursiveTask<PrimeBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        // Two sieve segments per leaf: big enough to amortize the task, small enough to steal
+        static final long LEAF_SIZE = 1L << 20;
+
+        private final long startRange;
+        private final long endRange;
+
+        public PrimeRangeTask(long startRange, long endRange) {
+            this.startRange = startRange;
+            this.endRange = endRange;
+        }
+
+        @Override
+        protected PrimeBuffer compute() {
+            if (endRange - startRange < LEAF_SIZE) {
+                PrimeBuffer primes = new PrimeBuffer();
+                SIEVE.forEachPrime(startRange, endRange, primes);
+                return primes;
+            }
+            long mid = startRange + (endRange - startRange) / 2;
+            PrimeRangeTask left = new PrimeRangeTask(startRange, mid);
+            left.fork(); // Left half becomes available for other workers to steal
+            PrimeBuffer right = new PrimeRangeTask(mid + 1, endRange).compute();
+            PrimeBuffer primes = left.join();
+            primes.append(right); // Links the right half's chunks; no values are copied
+            return primes;
+        }
+    }
+
+    // A virtual thread per task on JDK 21+; found by reflection so older JDKs can use a cached pool instead
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            System.out.println("Virtual threads are not available on this JDK; using platform threads instead.");
+            return Executors.newCachedThreadPool();
         }
     }
 
     public static void main(String[] args) {
+        // "java PrimeFinderDemo bench" compares the primality tests instead of running the demo
+        if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+            runBenchmarks();
+            return;
+        }
+
         System.out.println("=== 1. Using Thread Class ===");
         // Create and start threads directly
         PrimeThread thread1 = new PrimeThread("Thread-A", 1, 20);
@@ -111,7 +493,11 @@ public class PrimeFinderDemo {
          * for the CPU), we submit tasks to the pool, and the executor handles the rest.
          */
         int poolSize = 2;
-        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        // "java PrimeFinderDemo virtual" gives every task its own virtual thread instead of a fixed pool
+        boolean useVirtualThreads = args.length > 0 && args[0].equalsIgnoreCase("virtual");
+        ExecutorService executor = useVirtualThreads
+                ? newVirtualThreadExecutor()
+                : Executors.newFixedThreadPool(poolSize);
 
         // Submit multiple tasks to the thread pool
         executor.submit(new PrimeRunnable("PoolTask-A", 81, 100));
@@ -128,6 +514,62 @@ public class PrimeFinderDemo {
             e.printStackTrace();
         }
         
+        System.out.println("\n=== 4. Using Fork/Join with Work Stealing ===");
+        long forkJoinLimit = 20_000_000L;
+        long forkJoinStart = System.nanoTime();
+        PrimeBuffer found = ForkJoinPool.commonPool().invoke(new PrimeRangeTask(1, forkJoinLimit));
+        System.out.printf("Found %,d primes up to %,d on %d workers in %d ms (largest: %d)%n",
+                found.size(), forkJoinLimit, ForkJoinPool.commonPool().getParallelism(),
+                (System.nanoTime() - forkJoinStart) / 1_000_000, found.last());
+
+        System.out.println("\n=== 5. Counting with the Segmented Sieve ===");
+        long limit = 100_000_000L;
+        long start = System.nanoTime();
+        long count = SIEVE.countPrimes(1, limit);
+        System.out.printf("Found %,d primes up to %,d in %d ms%n", count, limit, (System.nanoTime() - start) / 1_000_000);
+
         System.out.println("\nAll tasks completed successfully.");
     }
+
+    /**
+     * Times trial division against Miller-Rabin on the same int inputs, then
+     * Miller-Rabin alone on 62-bit values where trial division is hopeless.
+     */
+    private static void runBenchmarks() {
+        Random random = new Random(42);
+        int[] ints = random.ints(200_000, 1, Integer.MAX_VALUE).toArray();
+        long[] longs = random.longs(200_000, 1L << 61, 1L << 62).toArray();
+
+        System.out.printf("%n--- %,d random ints ---%n", ints.length);
+        benchmark("isPrime(int) trial division", 1, () -> {
+            for (int n : ints) if (isPrime(n)) sink++;
+        });
+        benchmark("isPrime(long) Miller-Rabin", 1, () -> {
+            for (int n : ints) if (isPrime((long) n)) sink++;
+        });
+
+        System.out.printf("%n--- %,d random 62-bit longs ---%n", longs.length);
+        benchmark("isPrime(long) Miller-Rabin", 1, () -> {
+            for (long n : longs) if (isPrime(n)) sink++;
+        });
+    }
+
+    /**
+     * Runs task reps times per measurement: 3 warm-up runs for the JIT, then 7 timed
+     * runs, reporting the best and median time per call.
+     */
+    private static void benchmark(String label, int reps, Runnable task) {
+        final int warmups = 3;
+        final int runs = 7;
+        for (int i = 0; i < warmups * reps; i++) task.run();
+
+        long[] times = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) task.run();
+            times[r] = (System.nanoTime() - start) / reps;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-36s best %,12.4f ms   median %,12.4f ms%n", label, times[0] / 1e6, times[runs / 2] / 1e6);
+    }
 }
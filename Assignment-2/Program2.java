@@ -1,64 +1,605 @@
-import java.util.LinkedList;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 0. The contract shared by every buffer implementation below
+interface BoundedBuffer {
+    /**
+     * Adds a value, blocking while the buffer is full.
+     */
+    void produce(int value) throws InterruptedException;
+
+    /**
+     * Removes the oldest value, blocking while the buffer is empty.
+     */
+    int consume() throws InterruptedException;
+
+    /**
+     * Adds values[offset .. offset + length), blocking while the buffer is full.
+     * Items are moved in runs as long as the free space allows, paying for
+     * synchronization once per run instead of once per item.
+     */
+    void produceBatch(int[] values, int offset, int length) throws InterruptedException;
+
+    /**
+     * Removes up to max of the oldest values into dst[0 ..], blocking until at
+     * least one is available. Returns how many were removed.
+     */
+    int drainTo(int[] dst, int max) throws InterruptedException;
+
+    /**
+     * Number of items currently buffered. Concurrent operations may make it stale immediately.
+     */
+    int size();
+
+    int capacity();
+}
 
 // 1. The Shared Resource (Buffer)
-class SharedBuffer {
-    private final LinkedList<Integer> buffer = new LinkedList<>();
-    private final int CAPACITY = 5;
+class SharedBuffer implements BoundedBuffer {
+    // Items are kept in a fixed circular array: no node or Integer is allocated per item
+    private final int[] buffer;
+    private int head = 0;  // Index of the oldest item
+    private int count = 0; // Number of items currently stored
+    private final int CAPACITY;
+    private final boolean verbose;
+
+    /*
+     * An explicit lock with two conditions instead of synchronized/wait/notifyAll:
+     * producers wait on notFull and consumers on notEmpty, so a signal only wakes
+     * the side that can make progress. Unlike a monitor, a virtual thread waiting
+     * on a Condition also releases its carrier thread instead of pinning it.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+
+    public SharedBuffer() {
+        this(5, true);
+    }
 
     /**
-     * Called by the Producer thread to add items to the buffer.
+     * @param capacity Maximum number of items held at once.
+     * @param verbose  Whether to print every produce/consume (useful for the demo, too slow for benchmarks).
      */
-    public synchronized void produce(int value) throws InterruptedException {
-        // We use a while loop to check the condition to avoid "spurious wakeups"
-        while (buffer.size() == CAPACITY) {
-            System.out.println("Buffer is FULL. Producer is waiting...");
-            // Thread gives up the lock and goes to sleep until notified
-            wait(); 
+    public SharedBuffer(int capacity, boolean verbose) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1.");
         }
+        this.buffer = new int[capacity];
+        this.CAPACITY = capacity;
+        this.verbose = verbose;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        buffer.add(value);
-        System.out.println("Produced: " + value + " | Buffer size: " + buffer.size());
-        
-        // Notify the Consumer that there is now data to consume
-        notifyAll(); 
+    @Override
+    public int capacity() {
+        return CAPACITY;
+    }
+
+    /**
+     * Called by the Producer thread to add items to the buffer.
+     */
+    @Override
+    public void produce(int value) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // We use a while loop to check the condition to avoid "spurious wakeups"
+            while (count == CAPACITY) {
+                if (verbose) System.out.println("Buffer is FULL. Producer is waiting...");
+                // Thread gives up the lock and goes to sleep until signalled
+                notFull.await();
+            }
+
+            buffer[(head + count) % CAPACITY] = value;
+            count++;
+            if (verbose) System.out.println("Produced: " + value + " | Buffer size: " + count);
+
+            // Wake one Consumer: there is exactly one new item for it
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Called by the Consumer thread to remove items from the buffer.
      */
-    public synchronized int consume() throws InterruptedException {
-        while (buffer.isEmpty()) {
-            System.out.println("Buffer is EMPTY. Consumer is waiting...");
-            // Thread gives up the lock and goes to sleep until notified
-            wait(); 
+    @Override
+    public int consume() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (verbose) System.out.println("Buffer is EMPTY. Consumer is waiting...");
+                // Thread gives up the lock and goes to sleep until signalled
+                notEmpty.await();
+            }
+
+            int consumedValue = buffer[head];
+            head = (head + 1) % CAPACITY;
+            count--;
+            if (verbose) System.out.println("Consumed: " + consumedValue + " | Buffer size: " + count);
+
+            // Wake one Producer: there is exactly one free slot for it
+            notFull.signal();
+
+            return consumedValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Batched produce: one lock acquisition and one signal per run of items.
+     */
+    @Override
+    public void produceBatch(int[] values, int offset, int length) throws InterruptedException {
+        RingBuffers.checkRange(values, offset, length);
+        lock.lockInterruptibly();
+        try {
+            while (length > 0) {
+                while (count == CAPACITY) {
+                    if (verbose) System.out.println("Buffer is FULL. Producer is waiting...");
+                    notFull.await();
+                }
+
+                int run = Math.min(length, CAPACITY - count);
+                for (int i = 0; i < run; i++) {
+                    buffer[(head + count + i) % CAPACITY] = values[offset + i];
+                }
+                count += run;
+                offset += run;
+                length -= run;
+                if (verbose) System.out.println("Produced " + run + " items | Buffer size: " + count);
+
+                // A run may feed several consumers, so wake them all with a single call
+                if (run == 1) notEmpty.signal();
+                else notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Batched consume: takes everything available (up to max) under one lock and signals once.
+     */
+    @Override
+    public int drainTo(int[] dst, int max) throws InterruptedException {
+        RingBuffers.checkRange(dst, 0, max);
+        if (max == 0) return 0;
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (verbose) System.out.println("Buffer is EMPTY. Consumer is waiting...");
+                notEmpty.await();
+            }
+
+            int run = Math.min(max, count);
+            for (int i = 0; i < run; i++) {
+                dst[i] = buffer[(head + i) % CAPACITY];
+            }
+            head = (head + run) % CAPACITY;
+            count -= run;
+            if (verbose) System.out.println("Consumed " + run + " items | Buffer size: " + count);
+
+            if (run == 1) notFull.signal();
+            else notFull.signalAll();
+            return run;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
+
+/* * 1b. LOCK-FREE RING BUFFERS
+ * The buffers below never take a lock. Each slot of a pre-allocated array is
+ * reused forever, producers and consumers coordinate through ever-increasing
+ * sequence counters, and a thread that finds the buffer full or empty backs
+ * off according to a WaitStrategy instead of being woken by a signal.
+ */
+
+/**
+ * How a thread waits when the ring buffer is full (producer) or empty (consumer).
+ * SPIN burns a core for the lowest latency, YIELD lets other threads run, and
+ * PARK sleeps briefly so an idle pipeline costs almost no CPU.
+ */
+enum WaitStrategy {
+    SPIN {
+        @Override
+        void idle(int attempt) {
+            Thread.onSpinWait();
+        }
+    },
+    YIELD {
+        @Override
+        void idle(int attempt) {
+            if (attempt < 100) Thread.onSpinWait();
+            else Thread.yield();
+        }
+    },
+    PARK {
+        @Override
+        void idle(int attempt) {
+            if (attempt < 100) Thread.onSpinWait();
+            else if (attempt < 200) Thread.yield();
+            else LockSupport.parkNanos(50_000);
+        }
+    };
+
+    /**
+     * Waits a little; attempt counts how many times the caller has already waited for this item.
+     */
+    abstract void idle(int attempt);
+
+    /**
+     * Waits a little, or throws if the thread was interrupted, matching the blocking buffer.
+     */
+    void await(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        idle(attempt);
+    }
+}
+
+/*
+ * A sequence counter surrounded by 56 bytes of padding on each side, so it
+ * sits on its own cache line. Without the padding, a producer updating the
+ * tail would keep invalidating the consumer's cached copy of the head
+ * ("false sharing").
+ */
+class SequencePadLeft {
+    protected long p01, p02, p03, p04, p05, p06, p07;
+}
+
+class SequenceValue extends SequencePadLeft {
+    protected volatile long value;
+    // Owner-private snapshot of the opposite counter (see SpscRingBuffer); shares the owner's cache line
+    protected long cached;
+}
+
+class PaddedSequence extends SequenceValue {
+    protected long p11, p12, p13, p14, p15, p16, p17;
+
+    private static final VarHandle VALUE;
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    long get() {
+        return (long) VALUE.getAcquire(this);
+    }
+
+    /**
+     * Publishes a new value. Release ordering guarantees the slot written before it is visible first.
+     */
+    void set(long newValue) {
+        VALUE.setRelease(this, newValue);
+    }
+
+    boolean compareAndSet(long expected, long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+}
+
+/**
+ * Ring buffer for exactly one producer thread and one consumer thread.
+ * Each side owns one counter and only reads the other's, so no CAS is needed.
+ */
+class SpscRingBuffer implements BoundedBuffer {
+    private final int[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final PaddedSequence tail = new PaddedSequence(); // Next sequence to produce; cached = last seen head
+    private final PaddedSequence head = new PaddedSequence(); // Next sequence to consume; cached = last seen tail
+
+    /**
+     * @param capacity Rounded up to the next power of two so a sequence maps to a slot with a mask.
+     */
+    public SpscRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        this.slots = new int[RingBuffers.powerOfTwoCapacity(capacity)];
+        this.mask = slots.length - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public int size() {
+        long consumed = head.get();
+        return (int) Math.max(0, Math.min(slots.length, tail.get() - consumed));
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length;
+    }
+
+    @Override
+    public void produce(int value) throws InterruptedException {
+        long sequence = tail.value;
+        // Re-read the consumer's head only when the cached copy says the buffer is full
+        for (int attempt = 0; sequence - tail.cached >= slots.length; attempt++) {
+            tail.cached = head.get();
+            if (sequence - tail.cached >= slots.length) waitStrategy.await(attempt);
+        }
+        slots[(int) sequence & mask] = value;
+        tail.set(sequence + 1);
+    }
+
+    @Override
+    public int consume() throws InterruptedException {
+        long sequence = head.value;
+        for (int attempt = 0; sequence >= head.cached; attempt++) {
+            head.cached = tail.get();
+            if (sequence >= head.cached) waitStrategy.await(attempt);
+        }
+        int value = slots[(int) sequence & mask];
+        head.set(sequence + 1);
+        return value;
+    }
+
+    /**
+     * Fills every free slot it can, then publishes the whole run with a single store to the tail.
+     */
+    @Override
+    public void produceBatch(int[] values, int offset, int length) throws InterruptedException {
+        RingBuffers.checkRange(values, offset, length);
+        long sequence = tail.value;
+        while (length > 0) {
+            for (int attempt = 0; sequence - tail.cached >= slots.length; attempt++) {
+                tail.cached = head.get();
+                if (sequence - tail.cached >= slots.length) waitStrategy.await(attempt);
+            }
+            int run = (int) Math.min(length, slots.length - (sequence - tail.cached));
+            for (int i = 0; i < run; i++) {
+                slots[(int) (sequence + i) & mask] = values[offset + i];
+            }
+            sequence += run;
+            offset += run;
+            length -= run;
+            tail.set(sequence);
+        }
+    }
+
+    @Override
+    public int drainTo(int[] dst, int max) throws InterruptedException {
+        RingBuffers.checkRange(dst, 0, max);
+        if (max == 0) return 0;
+        long sequence = head.value;
+        for (int attempt = 0; sequence >= head.cached; attempt++) {
+            head.cached = tail.get();
+            if (sequence >= head.cached) waitStrategy.await(attempt);
+        }
+        int run = (int) Math.min(max, head.cached - sequence);
+        for (int i = 0; i < run; i++) {
+            dst[i] = slots[(int) (sequence + i) & mask];
+        }
+        head.set(sequence + run);
+        return run;
+    }
+}
+
+/**
+ * Ring buffer for any number of producers and consumers (Dmitry Vyukov's bounded queue).
+ * Every slot carries its own sequence number telling whose turn it is:
+ * equal to the claiming position means "free for that producer", one more
+ * means "filled for that consumer". Threads claim positions with a CAS.
+ */
+class MpmcRingBuffer implements BoundedBuffer {
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int[] slots;
+    private final long[] sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final PaddedSequence tail = new PaddedSequence();
+    private final PaddedSequence head = new PaddedSequence();
+
+    /**
+     * @param capacity Rounded up to the next power of two, and to at least 2: with a
+     *                 single slot, "filled for position p" (p + 1) would read the same
+     *                 as "free for position p + 1" and producers would overwrite items.
+     */
+    public MpmcRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        int size = Math.max(2, RingBuffers.powerOfTwoCapacity(capacity));
+        this.slots = new int[size];
+        this.sequences = new long[size];
+        for (int i = 0; i < size; i++) sequences[i] = i;
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public int size() {
+        long consumed = head.get();
+        return (int) Math.max(0, Math.min(slots.length, tail.get() - consumed));
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length;
+    }
+
+    @Override
+    public void produce(int value) throws InterruptedException {
+        for (int attempt = 0; ; ) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = (long) SEQUENCE.getAcquire(sequences, index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = value;
+                    SEQUENCE.setRelease(sequences, index, position + 1);
+                    return;
+                }
+            } else if (difference < 0) {
+                // The slot still holds an item from the previous lap: the buffer is full
+                waitStrategy.await(attempt++);
+            }
+            // Otherwise another producer claimed this position first; retry with a fresh tail
+        }
+    }
+
+    @Override
+    public int consume() throws InterruptedException {
+        for (int attempt = 0; ; ) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = (long) SEQUENCE.getAcquire(sequences, index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    int value = slots[index];
+                    // Hand the slot back to producers for the next lap
+                    SEQUENCE.setRelease(sequences, index, position + slots.length);
+                    return value;
+                }
+            } else if (difference < 0) {
+                // The slot has not been filled yet: the buffer is empty
+                waitStrategy.await(attempt++);
+            }
+        }
+    }
+
+    /*
+     * Batches claim a whole run of positions with one CAS, sized from the
+     * opposite counter. A claimed slot may still be finishing an operation
+     * from another thread that claimed it earlier, so each slot is waited on
+     * individually before use; that wait is short because the other thread
+     * already owns the slot and is just completing its copy.
+     */
+
+    @Override
+    public void produceBatch(int[] values, int offset, int length) throws InterruptedException {
+        RingBuffers.checkRange(values, offset, length);
+        while (length > 0) {
+            long position;
+            int run;
+            for (int attempt = 0; ; ) {
+                position = tail.get();
+                long free = slots.length - (position - head.get());
+                if (free <= 0) {
+                    waitStrategy.await(attempt++);
+                    continue;
+                }
+                run = (int) Math.min(length, free);
+                if (tail.compareAndSet(position, position + run)) break;
+            }
+            for (int i = 0; i < run; i++) {
+                long slotPosition = position + i;
+                int index = (int) slotPosition & mask;
+                for (int spin = 0; (long) SEQUENCE.getAcquire(sequences, index) != slotPosition; spin++) {
+                    waitStrategy.idle(spin);
+                }
+                slots[index] = values[offset + i];
+                SEQUENCE.setRelease(sequences, index, slotPosition + 1);
+            }
+            offset += run;
+            length -= run;
         }
+    }
 
-        int consumedValue = buffer.removeFirst();
-        System.out.println("Consumed: " + consumedValue + " | Buffer size: " + buffer.size());
-        
-        // Notify the Producer that there is now space in the buffer
-        notifyAll(); 
-        
-        return consumedValue;
+    @Override
+    public int drainTo(int[] dst, int max) throws InterruptedException {
+        RingBuffers.checkRange(dst, 0, max);
+        if (max == 0) return 0;
+        long position;
+        int run;
+        for (int attempt = 0; ; ) {
+            position = head.get();
+            long available = tail.get() - position;
+            if (available <= 0) {
+                waitStrategy.await(attempt++);
+                continue;
+            }
+            run = (int) Math.min(max, available);
+            if (head.compareAndSet(position, position + run)) break;
+        }
+        for (int i = 0; i < run; i++) {
+            long slotPosition = position + i;
+            int index = (int) slotPosition & mask;
+            for (int spin = 0; (long) SEQUENCE.getAcquire(sequences, index) != slotPosition + 1; spin++) {
+                waitStrategy.idle(spin);
+            }
+            dst[i] = slots[index];
+            SEQUENCE.setRelease(sequences, index, slotPosition + slots.length);
+        }
+        return run;
+    }
+}
+
+final class RingBuffers {
+    private RingBuffers() {
+    }
+
+    static int powerOfTwoCapacity(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+        }
+        return capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    static void checkRange(int[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > array.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length
+                    + ") is outside an array of length " + array.length + ".");
+        }
     }
 }
 
 // 2. The Producer Thread
 class Producer implements Runnable {
-    private final SharedBuffer sharedBuffer;
+    private final BoundedBuffer sharedBuffer;
+    private final int batchSize;
+
+    public Producer(BoundedBuffer sharedBuffer) {
+        this(sharedBuffer, 1);
+    }
 
-    public Producer(SharedBuffer sharedBuffer) {
+    /**
+     * @param batchSize Items handed over per call; above 1 the producer uses produceBatch().
+     */
+    public Producer(BoundedBuffer sharedBuffer, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
         this.sharedBuffer = sharedBuffer;
+        this.batchSize = batchSize;
     }
 
     @Override
     public void run() {
         int value = 1;
+        int[] batch = new int[batchSize];
         try {
             while (true) {
-                sharedBuffer.produce(value++);
-                // Simulate time taken to produce an item
-                Thread.sleep(500); 
+                if (batchSize == 1) {
+                    sharedBuffer.produce(value++);
+                } else {
+                    for (int i = 0; i < batchSize; i++) batch[i] = value++;
+                    sharedBuffer.produceBatch(batch, 0, batchSize);
+                }
+                // Simulate time taken to produce an item (or a batch)
+                Thread.sleep(500);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -69,19 +610,36 @@ class Producer implements Runnable {
 
 // 3. The Consumer Thread
 class Consumer implements Runnable {
-    private final SharedBuffer sharedBuffer;
+    private final BoundedBuffer sharedBuffer;
+    private final int batchSize;
 
-    public Consumer(SharedBuffer sharedBuffer) {
+    public Consumer(BoundedBuffer sharedBuffer) {
+        this(sharedBuffer, 1);
+    }
+
+    /**
+     * @param batchSize Maximum items taken per call; above 1 the consumer uses drainTo().
+     */
+    public Consumer(BoundedBuffer sharedBuffer, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
         this.sharedBuffer = sharedBuffer;
+        this.batchSize = batchSize;
     }
 
     @Override
     public void run() {
+        int[] batch = new int[batchSize];
         try {
             while (true) {
-                sharedBuffer.consume();
+                if (batchSize == 1) {
+                    sharedBuffer.consume();
+                } else {
+                    sharedBuffer.drainTo(batch, batchSize);
+                }
                 // Simulate time taken to consume/process an item (slower than producer to force a full buffer)
-                Thread.sleep(1000); 
+                Thread.sleep(1000);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -92,18 +650,420 @@ class Consumer implements Runnable {
 
 // 4. Main Class to run the simulation
 public class ProducerConsumerDemo {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
+        // "java ProducerConsumerDemo bench [items]" measures raw throughput of each buffer instead
+        if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+            runBenchmarks(args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000);
+            return;
+        }
+        // "java ProducerConsumerDemo harness ..." runs a timed N x M load test (see LoadHarness.main)
+        if (args.length > 0 && args[0].equalsIgnoreCase("harness")) {
+            LoadHarness.main(args);
+            return;
+        }
+
         System.out.println("=== Starting Producer-Consumer Simulation ===\n");
-        
+
         SharedBuffer sharedBuffer = new SharedBuffer();
 
+        // "java ProducerConsumerDemo virtual" runs the same simulation on virtual threads
+        if (args.length > 0 && args[0].equalsIgnoreCase("virtual")) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            executor.submit(new Producer(sharedBuffer));
+            executor.submit(new Consumer(sharedBuffer));
+            executor.shutdown();
+            // Virtual threads are daemon threads, so main must stay alive for the simulation to run
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            return;
+        }
+
         // Create the threads, sharing the exact same buffer instance
         Thread producerThread = new Thread(new Producer(sharedBuffer), "Producer");
         Thread consumerThread = new Thread(new Consumer(sharedBuffer), "Consumer");
 
         producerThread.start();
         consumerThread.start();
-        
+
         // Note: This program runs infinitely. You will need to stop it manually.
     }
+
+    // Backs the "virtual" demo and harness mode; before JDK 21 it degrades to a cached platform-thread pool
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            System.out.println("Virtual threads are not available on this JDK; using platform threads instead.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Pushes the given number of items from one producer to one consumer through each buffer, without pacing.
+     */
+    private static void runBenchmarks(int items) throws InterruptedException {
+        final int capacity = 1024;
+        System.out.printf("=== %,d items, capacity %d, 1 producer / 1 consumer ===%n", items, capacity);
+
+        // Batch size 1 uses produce()/consume(); larger sizes use produceBatch()/drainTo()
+        for (int batchSize : new int[] {1, 64}) {
+            String suffix = batchSize == 1 ? "" : " batch " + batchSize;
+            measure("SharedBuffer" + suffix, new SharedBuffer(capacity, false), items, batchSize);
+            for (WaitStrategy strategy : WaitStrategy.values()) {
+                measure("SpscRingBuffer " + strategy + suffix, new SpscRingBuffer(capacity, strategy), items, batchSize);
+                measure("MpmcRingBuffer " + strategy + suffix, new MpmcRingBuffer(capacity, strategy), items, batchSize);
+            }
+        }
+
+        // The smallest capacity with contention on both sides must finish and lose nothing
+        System.out.println("=== capacity 1, 2 producers / 2 consumers ===");
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            LoadHarness.Report report = new LoadHarness(new MpmcRingBuffer(1, strategy), 2, 2, 200_000_000L, false).run();
+            System.out.printf("%-36s %s%n", "MpmcRingBuffer " + strategy, report.lostItems() == 0 ? "ok" : "(LOST ITEMS)");
+        }
+    }
+
+    private static void measure(String label, BoundedBuffer buffer, int items, int batchSize) throws InterruptedException {
+        long[] checksum = new long[1];
+        Thread producer = new Thread(() -> {
+            try {
+                int[] batch = new int[batchSize];
+                for (int i = 0; i < items; ) {
+                    if (batchSize == 1) {
+                        buffer.produce(i++);
+                        continue;
+                    }
+                    int run = Math.min(batchSize, items - i);
+                    for (int j = 0; j < run; j++) batch[j] = i++;
+                    buffer.produceBatch(batch, 0, run);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                int[] batch = new int[batchSize];
+                long sum = 0;
+                for (int i = 0; i < items; ) {
+                    if (batchSize == 1) {
+                        sum += buffer.consume();
+                        i++;
+                        continue;
+                    }
+                    int run = buffer.drainTo(batch, Math.min(batchSize, items - i));
+                    for (int j = 0; j < run; j++) sum += batch[j];
+                    i += run;
+                }
+                checksum[0] = sum;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        long start = System.nanoTime();
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+        long elapsed = System.nanoTime() - start;
+
+        long expected = (long) items * (items - 1) / 2;
+        System.out.printf("%-36s %8.2f M items/s %s%n", label, items / (elapsed / 1e9) / 1e6,
+                checksum[0] == expected ? "" : "(CHECKSUM MISMATCH)");
+    }
+}
+
+// 5. Load-Testing Harness
+/**
+ * Runs N producers and M consumers against one buffer for a fixed time and
+ * reports what is needed to size CAPACITY and the thread counts:
+ * throughput, how full the buffer was, how long each side spent blocked,
+ * and the end-to-end latency of items.
+ *
+ * Each item carries its own send time: the low 31 bits of the producer's
+ * microsecond clock. That keeps items as plain ints and still measures
+ * latencies up to about 35 minutes.
+ */
+class LoadHarness {
+    // Sent by the main thread once per consumer after the producers stop; it is never a valid timestamp
+    static final int POISON_PILL = -1;
+    private static final int TIMESTAMP_MASK = 0x7FFFFFFF;
+    private static final int DEPTH_BUCKETS = 10;
+    private static final long DEPTH_SAMPLE_INTERVAL_NANOS = 100_000;
+
+    private final BoundedBuffer buffer;
+    private final int producers;
+    private final int consumers;
+    private final long durationNanos;
+    private final boolean virtualThreads;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param virtualThreads Run each producer and consumer on its own virtual thread instead of a platform thread.
+     */
+    LoadHarness(BoundedBuffer buffer, int producers, int consumers, long durationNanos, boolean virtualThreads) {
+        if (producers < 1 || consumers < 1) {
+            throw new IllegalArgumentException("At least one producer and one consumer are required.");
+        }
+        this.buffer = buffer;
+        this.producers = producers;
+        this.consumers = consumers;
+        this.durationNanos = durationNanos;
+        this.virtualThreads = virtualThreads;
+    }
+
+    private static final String USAGE = "Usage: harness [shared|spsc|mpmc] [producers] [consumers] [capacity]"
+            + " [seconds] [SPIN|YIELD|PARK] [platform|virtual]";
+
+    /**
+     * Runs one load test from the command line (see USAGE); bad arguments print the usage instead.
+     */
+    static void main(String[] args) throws InterruptedException {
+        String type = args.length > 1 ? args[1].toLowerCase() : "mpmc";
+        boolean virtualThreads = args.length > 7 && args[7].equalsIgnoreCase("virtual");
+        int producers, consumers, seconds;
+        WaitStrategy strategy;
+        BoundedBuffer buffer;
+        LoadHarness harness;
+        try {
+            producers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+            consumers = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+            int capacity = args.length > 4 ? Integer.parseInt(args[4]) : 1024;
+            seconds = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+            strategy = args.length > 6 ? WaitStrategy.valueOf(args[6].toUpperCase()) : WaitStrategy.PARK;
+            if (seconds < 1) {
+                throw new IllegalArgumentException("The run must last at least 1 second.");
+            }
+
+            switch (type) {
+                case "shared":
+                    buffer = new SharedBuffer(capacity, false);
+                    break;
+                case "spsc":
+                    if (producers != 1 || consumers != 1) {
+                        throw new IllegalArgumentException("spsc supports exactly 1 producer and 1 consumer.");
+                    }
+                    buffer = new SpscRingBuffer(capacity, strategy);
+                    break;
+                case "mpmc":
+                    buffer = new MpmcRingBuffer(capacity, strategy);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown buffer type. Please use 'shared', 'spsc' or 'mpmc'.");
+            }
+            harness = new LoadHarness(buffer, producers, consumers, seconds * 1_000_000_000L, virtualThreads);
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException and an unknown wait strategy name
+            System.out.println("Error: " + e.getMessage());
+            System.out.println(USAGE);
+            return;
+        }
+
+        System.out.printf("=== Load test: %s%s, %d producer(s) / %d consumer(s), capacity %d, %d s, %s threads ===%n",
+                type, type.equals("shared") ? "" : " (" + strategy + ")", producers, consumers,
+                buffer.capacity(), seconds, virtualThreads ? "virtual" : "platform");
+        harness.run().print();
+    }
+
+    private static int nowMicros() {
+        return (int) (System.nanoTime() / 1_000) & TIMESTAMP_MASK;
+    }
+
+    Report run() throws InterruptedException {
+        Report report = new Report();
+        // One thread per producer and consumer either way; only the kind of thread differs
+        ExecutorService executor = virtualThreads
+                ? ProducerConsumerDemo.newVirtualThreadExecutor()
+                : Executors.newFixedThreadPool(producers + consumers);
+        List<Future<?>> producerTasks = new ArrayList<>();
+        List<Future<?>> consumerTasks = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < producers; i++) producerTasks.add(executor.submit(() -> produceUntilStopped(report)));
+        for (int i = 0; i < consumers; i++) consumerTasks.add(executor.submit(() -> consumeUntilPoisoned(report)));
+
+        // The main thread samples the queue depth while the run lasts
+        long deadline = start + durationNanos;
+        while (System.nanoTime() < deadline) {
+            int depth = buffer.size();
+            report.depthSamples[Math.min(DEPTH_BUCKETS - 1, depth * DEPTH_BUCKETS / buffer.capacity())]++;
+            LockSupport.parkNanos(DEPTH_SAMPLE_INTERVAL_NANOS);
+        }
+
+        // Graceful shutdown: stop producing, then one poison pill per consumer drains the buffer
+        running = false;
+        awaitAll(producerTasks);
+        for (int i = 0; i < consumers; i++) buffer.produce(POISON_PILL);
+        awaitAll(consumerTasks);
+        report.elapsedNanos = System.nanoTime() - start;
+        executor.shutdown();
+        return report;
+    }
+
+    private static void awaitAll(List<Future<?>> tasks) throws InterruptedException {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A harness thread failed.", e.getCause());
+            }
+        }
+    }
+
+    private void produceUntilStopped(Report report) {
+        long produced = 0;
+        long blockedNanos = 0;
+        try {
+            while (running) {
+                // A producer that finds the buffer full is timed until its item goes in
+                if (buffer.size() >= buffer.capacity()) {
+                    long blockedSince = System.nanoTime();
+                    buffer.produce(nowMicros());
+                    blockedNanos += System.nanoTime() - blockedSince;
+                } else {
+                    buffer.produce(nowMicros());
+                }
+                produced++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report.addProducer(produced, blockedNanos);
+    }
+
+    private void consumeUntilPoisoned(Report report) {
+        LatencyHistogram latencies = new LatencyHistogram();
+        long consumed = 0;
+        long blockedNanos = 0;
+        try {
+            while (true) {
+                int sentAt;
+                if (buffer.size() == 0) {
+                    long blockedSince = System.nanoTime();
+                    sentAt = buffer.consume();
+                    blockedNanos += System.nanoTime() - blockedSince;
+                } else {
+                    sentAt = buffer.consume();
+                }
+                if (sentAt == POISON_PILL) break;
+                // Masked subtraction stays correct when the 31-bit clock wraps around
+                latencies.record((nowMicros() - sentAt) & TIMESTAMP_MASK);
+                consumed++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report.addConsumer(consumed, blockedNanos, latencies);
+    }
+
+    /**
+     * Totals merged from every thread once it finishes.
+     */
+    final class Report {
+        final long[] depthSamples = new long[DEPTH_BUCKETS];
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private long produced, consumed, producerBlockedNanos, consumerBlockedNanos;
+        long elapsedNanos;
+
+        synchronized void addProducer(long items, long blockedNanos) {
+            produced += items;
+            producerBlockedNanos += blockedNanos;
+        }
+
+        synchronized void addConsumer(long items, long blockedNanos, LatencyHistogram histogram) {
+            consumed += items;
+            consumerBlockedNanos += blockedNanos;
+            latencies.add(histogram);
+        }
+
+        synchronized long lostItems() {
+            return produced - consumed;
+        }
+
+        synchronized void print() {
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("Throughput        : %.2f M items/s (%,d produced, %,d consumed)%n",
+                    consumed / seconds / 1e6, produced, consumed);
+            System.out.printf("Blocked on full   : %,d ms total across producers (%.1f%% of their time)%n",
+                    producerBlockedNanos / 1_000_000, 100.0 * producerBlockedNanos / (elapsedNanos * (double) producers));
+            System.out.printf("Blocked on empty  : %,d ms total across consumers (%.1f%% of their time)%n",
+                    consumerBlockedNanos / 1_000_000, 100.0 * consumerBlockedNanos / (elapsedNanos * (double) consumers));
+            System.out.printf("Latency (us)      : p50 %,d | p90 %,d | p99 %,d | p99.9 %,d | max %,d%n",
+                    latencies.percentile(50), latencies.percentile(90), latencies.percentile(99),
+                    latencies.percentile(99.9), latencies.max());
+
+            System.out.println("Queue depth (share of samples):");
+            long samples = 0;
+            for (long count : depthSamples) samples += count;
+            for (int i = 0; i < DEPTH_BUCKETS; i++) {
+                double share = samples == 0 ? 0 : 100.0 * depthSamples[i] / samples;
+                System.out.printf("  %3d-%3d%% full : %5.1f%% %s%n", i * 100 / DEPTH_BUCKETS,
+                        (i + 1) * 100 / DEPTH_BUCKETS, share, "#".repeat((int) Math.round(share / 2)));
+            }
+        }
+    }
+}
+
+/**
+ * Log-linear histogram in the style of HdrHistogram. Values below 32 get
+ * their own bucket; above that, every power of two is split into 16
+ * buckets. Memory is fixed and every recorded value is within 1/16 (about 6%)
+ * of its bucket's reported value.
+ */
+class LatencyHistogram {
+    private static final int LINEAR_LIMIT = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[LINEAR_LIMIT + (64 - 5) * SUB_BUCKETS];
+    private long total;
+    private long max;
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts[indexFor(value)]++;
+        total++;
+        if (value > max) max = value;
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    long max() {
+        return max;
+    }
+
+    /**
+     * Returns the (upper bound of the) value below which the given percentage of recordings fall.
+     */
+    long percentile(double percent) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(percent / 100.0 * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) return Math.min(max, highestValueIn(i));
+        }
+        return max;
+    }
+
+    private static int indexFor(long value) {
+        if (value < LINEAR_LIMIT) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value); // 5 or more
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (magnitude - 5) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < LINEAR_LIMIT) return index;
+        int magnitude = (index - LINEAR_LIMIT) / SUB_BUCKETS + 5;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
 }
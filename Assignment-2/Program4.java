@@ -1,7 +1,9 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 
 // 1. Implementing Comparable (Natural Ordering)
 // We add "implements Comparable<Book>" to modify the class itself.
@@ -47,7 +49,17 @@ class PriceComparator implements Comparator<Book> {
 }
 
 public class SortingDemo {
+
+    // Benchmarked results feed this field so the JIT cannot drop the work
+    private static volatile long sink;
+
     public static void main(String[] args) {
+        // "java SortingDemo bench [sizes...]" times the three orderings instead of running the demo
+        if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+            runBenchmarks(args);
+            return;
+        }
+
         List<Book> library = new ArrayList<>();
         library.add(new Book(301, "The Great Gatsby", 15.99));
         library.add(new Book(105, "1984", 12.50));
@@ -86,4 +98,63 @@ public class SortingDemo {
             System.out.println(book);
         }
     }
+
+    /**
+     * Times sorting a shuffled library of each requested size with every ordering shown in the demo.
+     */
+    private static void runBenchmarks(String[] args) {
+        int[] sizes = {1_000, 100_000, 1_000_000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        Random random = new Random(42);
+        for (int size : sizes) {
+            List<Book> books = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                books.add(new Book(random.nextInt(), "Title " + random.nextInt(size), random.nextInt(10_000) / 100.0));
+            }
+            List<Book> scratch = new ArrayList<>(books);
+            Comparator<Book> priceComparator = new PriceComparator();
+            Comparator<Book> titleComparator = Comparator.comparing(Book::getTitle);
+
+            System.out.printf("%n--- n = %,d ---%n", size);
+            // Each run restores the original order first so every sort sees the same unsorted input
+            benchmark("Comparable (ID)", 1, () -> {
+                Collections.copy(scratch, books);
+                Collections.sort(scratch);
+                sink += scratch.get(0).getId();
+            });
+            benchmark("PriceComparator", 1, () -> {
+                Collections.copy(scratch, books);
+                scratch.sort(priceComparator);
+                sink += scratch.get(0).getId();
+            });
+            benchmark("Comparator.comparing(title)", 1, () -> {
+                Collections.copy(scratch, books);
+                scratch.sort(titleComparator);
+                sink += scratch.get(0).getId();
+            });
+        }
+    }
+
+    /**
+     * Runs task reps times per measurement: 3 warm-up runs for the JIT, then 7 timed
+     * runs, reporting the best and median time per call.
+     */
+    private static void benchmark(String label, int reps, Runnable task) {
+        final int warmups = 3;
+        final int runs = 7;
+        for (int i = 0; i < warmups * reps; i++) task.run();
+
+        long[] times = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) task.run();
+            times[r] = (System.nanoTime() - start) / reps;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-36s best %,12.4f ms   median %,12.4f ms%n", label, times[0] / 1e6, times[runs / 2] / 1e6);
+    }
 }
@@ -1,15 +1,85 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WordCountDemo {
 
+    // Benchmarked results feed this field so the JIT cannot drop the work
+    private static volatile long sink;
+
+    // Files are counted in slices of about this many bytes, several per thread for load balancing
+    private static final long MAPPED_CHUNK_SIZE = 64L * 1024 * 1024;
+
     public static void main(String[] args) {
+        // "java WordCountDemo bench [sizesInMB...]" times countWordsInFile instead of running the demo
+        if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+            runBenchmarks(args);
+            return;
+        }
+
+        // "java WordCountDemo count <file> [threads]" counts an existing (possibly huge) file in parallel
+        if (args.length > 1 && args[0].equalsIgnoreCase("count")) {
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            printWordCounts(countWordsMapped(args[1], threads));
+            return;
+        }
+
+        // "java WordCountDemo update <file> [threads]" counts only what was appended since the last update
+        if (args.length > 1 && args[0].equalsIgnoreCase("update")) {
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            updateWordCounts(args[1], threads);
+            return;
+        }
+
+        // "java WordCountDemo top <k> [file|-] [epsilon] [delta]" reports the k most frequent words in fixed memory
+        if (args.length > 1 && args[0].equalsIgnoreCase("top")) {
+            String source = args.length > 2 ? args[2] : "-";
+            TopWords topWords;
+            try {
+                int k = Integer.parseInt(args[1]);
+                double epsilon = args.length > 3 ? Double.parseDouble(args[3]) : 1e-4;
+                double delta = args.length > 4 ? Double.parseDouble(args[4]) : 1e-3;
+                topWords = new TopWords(k, epsilon, delta);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid arguments: " + e.getMessage());
+                System.err.println("Usage: java WordCountDemo top <k> [file|-] [epsilon in (0,1)] [delta in (0,1)]");
+                return;
+            }
+            printTopWords(source, topWords);
+            return;
+        }
+
         String filePath = "sample_text.txt";
 
         // 1. Create a sample file to read from
@@ -19,19 +89,52 @@ public class WordCountDemo {
         Map<String, Integer> wordCounts = countWordsInFile(filePath);
 
         // 3. Display the results
+        printWordCounts(wordCounts);
+
+        // Clean up the temporary file (optional)
+        new File(filePath).delete();
+    }
+
+    private static void printWordCounts(Map<String, Integer> wordCounts) {
         System.out.println("=== Word Frequencies ===");
         for (Map.Entry<String, Integer> entry : wordCounts.entrySet()) {
             System.out.printf("%-10s : %d%n", entry.getKey(), entry.getValue());
         }
-        
-        // Clean up the temporary file (optional)
-        new File(filePath).delete();
     }
 
     /**
-     * Core Logic: Reads a file line by line and counts word occurrences.
+     * Core Logic: Reads a file in blocks and counts word occurrences.
+     *
+     * Words are found by WordScanner, which lowercases and hashes them in a
+     * reusable buffer, and counted in a WordCounts map keyed by the bytes
+     * themselves. Counting a word that has been seen before allocates nothing;
+     * Strings are only made for the final result.
      */
     private static Map<String, Integer> countWordsInFile(String filePath) {
+        WordScanner scanner = new WordScanner();
+        WordCounts counts = new WordCounts();
+
+        // Using try-with-resources to automatically close the file after reading
+        try (InputStream in = new FileInputStream(filePath)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+
+            // Read until the end of the file (read returns -1)
+            while ((read = in.read(buffer)) > 0) {
+                scanner.scan(buffer, 0, read, counts);
+            }
+            scanner.finish(counts);
+        } catch (IOException e) {
+            System.err.println("An error occurred while reading the file: " + e.getMessage());
+        }
+
+        return counts.toMap();
+    }
+
+    /**
+     * The original line-by-line version of countWordsInFile, kept as the benchmark baseline.
+     */
+    private static Map<String, Integer> countWordsWithSplit(String filePath) {
         Map<String, Integer> wordMap = new HashMap<>();
 
         // Using try-with-resources to automatically close the file after reading
@@ -61,6 +164,197 @@ public class WordCountDemo {
         return wordMap;
     }
 
+    /**
+     * Streams a file (or standard input for "-") through the top-K tracker and
+     * prints the most frequent words with their estimated counts.
+     */
+    private static void printTopWords(String source, TopWords topWords) {
+        WordScanner scanner = new WordScanner();
+        try (InputStream in = source.equals("-") ? System.in : new FileInputStream(source)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                scanner.scan(buffer, 0, read, topWords);
+            }
+            scanner.finish(topWords);
+        } catch (IOException e) {
+            System.err.println("An error occurred while reading the input: " + e.getMessage());
+            return;
+        }
+
+        System.out.printf("=== Top %d Words (%,d words read) ===%n", topWords.capacity(), topWords.totalWords());
+        for (Map.Entry<String, Long> entry : topWords.top()) {
+            System.out.printf("%-10s : ~%d%n", entry.getKey(), entry.getValue());
+        }
+        System.out.printf("Counts may be overestimated by up to %,d with probability %.4f.%n",
+                topWords.errorBound(), 1 - topWords.failureProbability());
+    }
+
+    /**
+     * Counts words exactly like countWordsInFile, but for files too large to
+     * read line by line on one core.
+     *
+     * The file is memory-mapped in slices of about MAPPED_CHUNK_SIZE bytes whose
+     * edges are moved forward to the next non-word byte, so no word is split
+     * between slices. Worker threads take slices from a shared counter, count
+     * them into a map of their own, and the maps are merged at the end.
+     *
+     * Words are split by WordScanner, so the result is the same as countWordsInFile.
+     */
+    private static Map<String, Integer> countWordsMapped(String filePath, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+        WordCounts total = new WordCounts();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            total = countRange(channel, 0, channel.size(), threads);
+        } catch (IOException e) {
+            System.err.println("An error occurred while reading the file: " + e.getMessage());
+        } catch (ExecutionException e) {
+            System.err.println("An error occurred while reading the file: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return total.toMap();
+    }
+
+    /**
+     * Brings the word counts of a growing file up to date using a snapshot
+     * stored next to it (file + ".wcsnap"), then prints a summary.
+     *
+     * When the file has only grown since the snapshot, just the new bytes are
+     * counted and added, so repeated runs over an append-only log cost O(new
+     * data). The last word of the previous run may have been cut off by the
+     * write in progress, so it is taken back out and scanned again. If the
+     * file shrank, was rewritten in place, or starts with different bytes than
+     * before, it is counted from scratch.
+     */
+    private static void updateWordCounts(String filePath, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+        Path file = Paths.get(filePath);
+        Path snapshotPath = Paths.get(filePath + ".wcsnap");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            WordCountSnapshot snapshot = WordCountSnapshot.load(snapshotPath);
+
+            if (snapshot != null && snapshot.size == size && snapshot.modified == modified) {
+                System.out.println("Snapshot is up to date; nothing to count.");
+                printSummary(snapshot.counts.toMap(), 0);
+                return;
+            }
+
+            WordCounts counts;
+            long from;
+            if (snapshot != null && size > snapshot.size && snapshot.headMatches(channel)) {
+                counts = snapshot.counts;
+                from = snapshot.tailStart;
+                if (snapshot.tail.length > 0) {
+                    counts.add(snapshot.tail, snapshot.tail.length, WordScanner.hash(snapshot.tail, snapshot.tail.length), -1);
+                }
+            } else {
+                if (snapshot != null) System.out.println("File was truncated or rewritten; counting from the start.");
+                counts = new WordCounts();
+                from = 0;
+            }
+
+            counts.addAll(countRange(channel, from, size, threads));
+            WordCountSnapshot.of(channel, size, modified, counts).save(snapshotPath);
+            printSummary(counts.toMap(), size - from);
+        } catch (IOException e) {
+            System.err.println("An error occurred while updating the word counts: " + e.getMessage());
+        } catch (ExecutionException e) {
+            System.err.println("An error occurred while reading the file: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void printSummary(Map<String, Integer> wordCounts, long bytesScanned) {
+        long totalWords = 0;
+        for (int count : wordCounts.values()) totalWords += count;
+        System.out.printf("Scanned %,d bytes; %,d words, %,d distinct.%n", bytesScanned, totalWords, wordCounts.size());
+
+        List<Map.Entry<String, Integer>> top = new ArrayList<>(wordCounts.entrySet());
+        top.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        System.out.println("=== Most Frequent Words ===");
+        for (Map.Entry<String, Integer> entry : top.subList(0, Math.min(10, top.size()))) {
+            System.out.printf("%-10s : %d%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Counts the words in bytes [from, to) of the channel in parallel; from must not fall inside a word.
+     */
+    private static WordCounts countRange(FileChannel channel, long from, long to, int threads)
+            throws IOException, ExecutionException, InterruptedException {
+        long size = to - from;
+        int chunks = (int) Math.max(threads, (size + MAPPED_CHUNK_SIZE - 1) / MAPPED_CHUNK_SIZE);
+        long[] bounds = new long[chunks + 1];
+        bounds[0] = from;
+        for (int i = 1; i < chunks; i++) {
+            bounds[i] = alignToWordBoundary(channel, Math.max(bounds[i - 1], from + size * i / chunks), to);
+        }
+        bounds[chunks] = to;
+
+        AtomicInteger nextChunk = new AtomicInteger();
+        Callable<WordCounts> worker = () -> {
+            WordScanner scanner = new WordScanner();
+            WordCounts counts = new WordCounts();
+            for (int i; (i = nextChunk.getAndIncrement()) < chunks; ) {
+                long length = bounds[i + 1] - bounds[i];
+                if (length == 0) continue;
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("A single word spans more than 2 GB at offset " + bounds[i]);
+                }
+                ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], length);
+                scanner.scan(chunk, 0, chunk.limit(), counts);
+                scanner.finish(counts);
+            }
+            return counts;
+        };
+
+        WordCounts total = new WordCounts();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<WordCounts>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) results.add(pool.submit(worker));
+            for (Future<WordCounts> result : results) {
+                total.addAll(result.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the first position at or after the given one that does not fall inside a word.
+     */
+    private static long alignToWordBoundary(FileChannel channel, long position, long size) throws IOException {
+        if (position == 0 || position >= size) return Math.min(position, size);
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long start = position - 1; // The byte before the cut decides whether a word is being split
+        while (start < size) {
+            window.clear();
+            int read = channel.read(window, start);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (!WordScanner.isWordByte(window.get(i))) {
+                    // The cut already sits between words, or the word ends here
+                    return Math.max(position, start + i);
+                }
+            }
+            start += read;
+        }
+        return size;
+    }
+
     /**
      * Helper Method: Generates a sample file so the program can run immediately.
      */
@@ -74,4 +368,726 @@ public class WordCountDemo {
             System.err.println("Could not create sample file: " + e.getMessage());
         }
     }
+
+    /**
+     * Times countWordsInFile over generated files of each requested size (in MB).
+     */
+    private static void runBenchmarks(String[] args) {
+        int[] sizesInMb = {1, 16, 128};
+        if (args.length > 1) {
+            sizesInMb = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) sizesInMb[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        for (int sizeInMb : sizesInMb) {
+            File file;
+            try {
+                file = File.createTempFile("wordcount-bench", ".txt");
+                file.deleteOnExit();
+                createBenchmarkFile(file, sizeInMb * 1024L * 1024L);
+            } catch (IOException e) {
+                System.err.println("Could not create benchmark file: " + e.getMessage());
+                return;
+            }
+
+            System.out.printf("%n--- %d MB ---%n", sizeInMb);
+            benchmark("countWordsWithSplit", 1, () -> sink += countWordsWithSplit(file.getPath()).size());
+            benchmark("countWordsInFile", 1, () -> sink += countWordsInFile(file.getPath()).size());
+            int threads = Runtime.getRuntime().availableProcessors();
+            benchmark("countWordsMapped, " + threads + " thread(s)", 1,
+                () -> sink += countWordsMapped(file.getPath(), threads).size());
+            reportAllocation("countWordsWithSplit", () -> sink += countWordsWithSplit(file.getPath()).size());
+            reportAllocation("countWordsInFile", () -> sink += countWordsInFile(file.getPath()).size());
+            file.delete();
+        }
+    }
+
+    /**
+     * Prints how many bytes one run of the task allocates on the calling thread, where the JVM can tell.
+     */
+    private static void reportAllocation(String label, Runnable task) {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        long before = allocation.getThreadAllocatedBytes(threadId);
+        task.run();
+        long allocated = allocation.getThreadAllocatedBytes(threadId) - before;
+        System.out.printf("%-30s allocates %10.1f MB per run%n", label, allocated / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Writes roughly the requested number of bytes of text drawn from a fixed vocabulary.
+     */
+    private static void createBenchmarkFile(File file, long targetBytes) throws IOException {
+        // A few thousand distinct words with mixed case and punctuation, like a real log or book
+        String[] vocabulary = new String[4096];
+        Random random = new Random(42);
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + random.nextInt(9);
+            for (int c = 0; c < length; c++) word.append((char) ('a' + random.nextInt(26)));
+            if (random.nextInt(8) == 0) word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+            vocabulary[i] = word.toString();
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            long written = 0;
+            while (written < targetBytes) {
+                StringBuilder line = new StringBuilder();
+                int wordsInLine = 5 + random.nextInt(15);
+                for (int w = 0; w < wordsInLine; w++) {
+                    line.append(vocabulary[random.nextInt(vocabulary.length)]);
+                    line.append(random.nextInt(10) == 0 ? ", " : " ");
+                }
+                line.append(".\n");
+                writer.write(line.toString());
+                written += line.length();
+            }
+        }
+    }
+
+    /**
+     * Runs task reps times per measurement: 3 warm-up runs for the JIT, then 7 timed
+     * runs, reporting the best and median time per call.
+     */
+    private static void benchmark(String label, int reps, Runnable task) {
+        final int warmups = 3;
+        final int runs = 7;
+        for (int i = 0; i < warmups * reps; i++) task.run();
+
+        long[] times = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) task.run();
+            times[r] = (System.nanoTime() - start) / reps;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-36s best %,12.4f ms   median %,12.4f ms%n", label, times[0] / 1e6, times[runs / 2] / 1e6);
+    }
+}
+
+/**
+ * Splits bytes into lowercase words the same way toLowerCase().split("\\W+")
+ * splits text: [A-Za-z0-9_] are word bytes and every other byte, including
+ * each byte of a multi-byte UTF-8 character, separates words.
+ *
+ * That holds for all ASCII text and all UTF-8 text except two characters whose
+ * lowercase form contains an ASCII letter: capital I with dot (U+0130) becomes
+ * "i" plus a combining dot and the Kelvin sign (U+212A) becomes "k", so split()
+ * keeps them in a word while this scanner treats their bytes as separators.
+ * Under a Turkish default locale toLowerCase() also turns 'I' into the
+ * non-ASCII dotless i (U+0131).
+ *
+ * The current word is lowercased and hashed into a reusable buffer as it is
+ * scanned, so a word may span several calls to scan(). Nothing is allocated
+ * unless a word is longer than any seen before.
+ */
+final class WordScanner {
+    /**
+     * Receives each word. The array is reused, so it is only valid during the call.
+     */
+    interface WordSink {
+        void word(byte[] word, int length, int hash);
+    }
+
+    // Lowercased value of every word byte; 0 marks a separator
+    private static final byte[] WORD_BYTES = new byte[256];
+
+    static {
+        for (int c = '0'; c <= '9'; c++) WORD_BYTES[c] = (byte) c;
+        for (int c = 'a'; c <= 'z'; c++) WORD_BYTES[c] = (byte) c;
+        for (int c = 'A'; c <= 'Z'; c++) WORD_BYTES[c] = (byte) (c + ('a' - 'A'));
+        WORD_BYTES['_'] = '_';
+    }
+
+    private byte[] word = new byte[64];
+    private int length;
+    private int hash;
+    private byte[] staging;
+
+    static boolean isWordByte(byte b) {
+        return WORD_BYTES[b & 0xFF] != 0;
+    }
+
+    /**
+     * Hashes an already lowercased word the same way scan() does.
+     */
+    static int hash(byte[] word, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) h = (h ^ word[i]) * 0x01000193; // FNV-1a
+        return h;
+    }
+
+    void scan(byte[] bytes, int from, int to, WordSink sink) {
+        for (int i = from; i < to; i++) {
+            accept(WORD_BYTES[bytes[i] & 0xFF], sink);
+        }
+    }
+
+    /**
+     * Scans a (typically memory-mapped) buffer. Bytes are bulk-copied into a
+     * small on-heap array first, which is cheaper than reading them one by one.
+     */
+    void scan(ByteBuffer bytes, int from, int to, WordSink sink) {
+        if (staging == null) staging = new byte[16 * 1024];
+        for (int i = from; i < to; i += staging.length) {
+            int n = Math.min(staging.length, to - i);
+            bytes.get(i, staging, 0, n);
+            scan(staging, 0, n, sink);
+        }
+    }
+
+    /**
+     * Emits the word in progress, if any. Call at the end of the input.
+     */
+    void finish(WordSink sink) {
+        if (length > 0) {
+            sink.word(word, length, hash);
+            length = 0;
+            hash = 0;
+        }
+    }
+
+    private void accept(byte lower, WordSink sink) {
+        if (lower == 0) {
+            finish(sink);
+            return;
+        }
+        if (length == word.length) word = Arrays.copyOf(word, length * 2);
+        word[length++] = lower;
+        hash = (hash ^ lower) * 0x01000193; // FNV-1a
+    }
+}
+
+/**
+ * Counts words in an open-addressing hash table keyed by the words' bytes.
+ *
+ * Lookups compare bytes in place against the stored keys. A word's bytes are
+ * copied only the first time it is seen, and counts are plain ints, so
+ * counting a known word allocates nothing. Strings are made only by toMap().
+ */
+final class WordCounts implements WordScanner.WordSink {
+    private byte[][] keys = new byte[1024][];
+    private int[] hashes = new int[1024];
+    private int[] counts = new int[1024];
+    private int size;
+
+    @Override
+    public void word(byte[] word, int length, int hash) {
+        add(word, length, hash, 1);
+    }
+
+    void add(byte[] word, int length, int hash, int count) {
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (true) {
+            byte[] key = keys[slot];
+            if (key == null) {
+                keys[slot] = Arrays.copyOf(word, length);
+                hashes[slot] = hash;
+                counts[slot] = count;
+                // Keep the table at most half full so probe runs stay short
+                if (++size * 2 > keys.length) resize();
+                return;
+            }
+            if (hashes[slot] == hash && key.length == length && Arrays.equals(key, 0, length, word, 0, length)) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void addAll(WordCounts other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            byte[] key = other.keys[i];
+            if (key != null) add(key, key.length, other.hashes[i], other.counts[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    Map<String, Integer> toMap() {
+        Map<String, Integer> map = new HashMap<>(size * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && counts[i] != 0) map.put(new String(keys[i], StandardCharsets.ISO_8859_1), counts[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Writes every word with a non-zero count as a varint length, the word's bytes and a varint count.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        int entries = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && counts[i] != 0) entries++;
+        }
+        WordCountSnapshot.writeVarInt(out, entries);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null || counts[i] == 0) continue;
+            WordCountSnapshot.writeVarInt(out, keys[i].length);
+            out.write(keys[i]);
+            WordCountSnapshot.writeVarInt(out, counts[i]);
+        }
+    }
+
+    static WordCounts readFrom(DataInputStream in) throws IOException {
+        WordCounts counts = new WordCounts();
+        // Every entry takes at least a length byte, one word byte and a count byte
+        int entries = WordCountSnapshot.readLength(in, 3);
+        for (int e = 0; e < entries; e++) {
+            byte[] word = new byte[WordCountSnapshot.readLength(in, 1)];
+            in.readFully(word);
+            counts.add(word, word.length, WordScanner.hash(word, word.length), WordCountSnapshot.readVarInt(in));
+        }
+        return counts;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        keys = new byte[oldKeys.length * 2][];
+        hashes = new int[keys.length];
+        counts = new int[keys.length];
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+            int slot = mix(oldHashes[i]) & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            hashes[slot] = oldHashes[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    /**
+     * Spreads the hash so the low bits used for the slot depend on every input bit.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
+
+/**
+ * Count-Min Sketch: approximate counts for an unbounded set of keys in fixed memory.
+ *
+ * With width ceil(e / epsilon) and depth ceil(ln(1 / delta)), an estimate is
+ * never below the true count and exceeds it by more than epsilon * N (N is
+ * the total of all additions) with probability at most delta.
+ */
+final class CountMinSketch {
+    // Caps the table at 2^22 x 32 counters (1 GB); the default epsilon and delta need 27,183 x 7
+    private static final int MAX_WIDTH = 1 << 22;
+    private static final int MAX_DEPTH = 32;
+
+    private final int width;
+    private final int depth;
+    private final long[] table;
+    private final double epsilon;
+    private final double delta;
+    private long total;
+
+    CountMinSketch(double epsilon, double delta) {
+        if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("Epsilon and delta must be between 0 and 1.");
+        }
+        double width = Math.ceil(Math.E / epsilon);
+        double depth = Math.ceil(Math.log(1 / delta));
+        if (width > MAX_WIDTH) {
+            throw new IllegalArgumentException(String.format("Epsilon must be at least %.1e.", Math.E / MAX_WIDTH));
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException(String.format("Delta must be at least %.1e.", Math.exp(-MAX_DEPTH)));
+        }
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.width = (int) width;
+        this.depth = (int) depth;
+        this.table = new long[this.width * this.depth];
+    }
+
+    /**
+     * Adds one occurrence of the key and returns its new estimated count.
+     * Row hashes are derived from one 64-bit hash (h1 + i * h2).
+     */
+    long addAndEstimate(long hash) {
+        total++;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int column = Math.floorMod(h1 + row * h2, width);
+            long count = ++table[row * width + column];
+            if (count < estimate) estimate = count;
+        }
+        return estimate;
+    }
+
+    long total() {
+        return total;
+    }
+
+    long errorBound() {
+        return (long) Math.ceil(epsilon * total);
+    }
+
+    double failureProbability() {
+        return delta;
+    }
+}
+
+/**
+ * Tracks the k most frequent words of a stream in fixed memory.
+ *
+ * Every word goes into a Count-Min Sketch. The k words with the highest
+ * estimates so far are kept in a min-heap; a new word replaces the heap's
+ * smallest entry once its estimate passes it. Heap entries are found by a
+ * 64-bit hash of the word, and a word's bytes are copied only when it enters
+ * the heap, so most words cost a few array updates and no allocation.
+ */
+final class TopWords implements WordScanner.WordSink {
+    private final CountMinSketch sketch;
+    private final int k;
+
+    // Min-heap on estimates, stored as parallel arrays
+    private final long[] heapHashes;
+    private final long[] heapEstimates;
+    private final byte[][] heapWords;
+    private int heapSize;
+
+    // Open-addressing index from word hash to heap position; key 0 marks an empty slot
+    private final long[] indexKeys;
+    private final int[] indexPositions;
+
+    TopWords(int k, double epsilon, double delta) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1.");
+        }
+        this.sketch = new CountMinSketch(epsilon, delta);
+        this.k = k;
+        this.heapHashes = new long[k];
+        this.heapEstimates = new long[k];
+        this.heapWords = new byte[k][];
+        int indexSize = Integer.highestOneBit(Math.max(2, k) * 2 - 1) * 2; // power of two, at least 2k
+        this.indexKeys = new long[indexSize];
+        this.indexPositions = new int[indexSize];
+    }
+
+    @Override
+    public void word(byte[] word, int length, int hash) {
+        long key = hash64(word, length);
+        long estimate = sketch.addAndEstimate(key);
+
+        int position = indexGet(key);
+        if (position >= 0) {
+            heapEstimates[position] = estimate;
+            siftDown(position);
+        } else if (heapSize < k) {
+            position = heapSize++;
+            store(position, key, estimate, Arrays.copyOf(word, length));
+            siftUp(position);
+        } else if (estimate > heapEstimates[0]) {
+            indexRemove(heapHashes[0]);
+            store(0, key, estimate, Arrays.copyOf(word, length));
+            siftDown(0);
+        }
+    }
+
+    int capacity() {
+        return k;
+    }
+
+    long totalWords() {
+        return sketch.total();
+    }
+
+    long errorBound() {
+        return sketch.errorBound();
+    }
+
+    double failureProbability() {
+        return sketch.failureProbability();
+    }
+
+    /**
+     * Returns the tracked words, most frequent first.
+     */
+    List<Map.Entry<String, Long>> top() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (int i = 0; i < heapSize; i++) {
+            entries.add(Map.entry(new String(heapWords[i], StandardCharsets.ISO_8859_1), heapEstimates[i]));
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return entries;
+    }
+
+    private void store(int position, long key, long estimate, byte[] word) {
+        heapHashes[position] = key;
+        heapEstimates[position] = estimate;
+        heapWords[position] = word;
+        indexPut(key, position);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (heapEstimates[parent] <= heapEstimates[position]) return;
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < heapSize && heapEstimates[left] < heapEstimates[smallest]) smallest = left;
+            if (right < heapSize && heapEstimates[right] < heapEstimates[smallest]) smallest = right;
+            if (smallest == position) return;
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long hash = heapHashes[a];
+        long estimate = heapEstimates[a];
+        byte[] word = heapWords[a];
+        heapHashes[a] = heapHashes[b];
+        heapEstimates[a] = heapEstimates[b];
+        heapWords[a] = heapWords[b];
+        heapHashes[b] = hash;
+        heapEstimates[b] = estimate;
+        heapWords[b] = word;
+        indexPut(heapHashes[a], a);
+        indexPut(heapHashes[b], b);
+    }
+
+    private int indexGet(long key) {
+        int mask = indexKeys.length - 1;
+        for (int slot = (int) key & mask; indexKeys[slot] != 0; slot = (slot + 1) & mask) {
+            if (indexKeys[slot] == key) return indexPositions[slot];
+        }
+        return -1;
+    }
+
+    private void indexPut(long key, int position) {
+        int mask = indexKeys.length - 1;
+        int slot = (int) key & mask;
+        while (indexKeys[slot] != 0 && indexKeys[slot] != key) slot = (slot + 1) & mask;
+        indexKeys[slot] = key;
+        indexPositions[slot] = position;
+    }
+
+    /**
+     * Removes a key and shifts later entries of its probe run back, so no tombstones are needed.
+     */
+    private void indexRemove(long key) {
+        int mask = indexKeys.length - 1;
+        int slot = (int) key & mask;
+        while (indexKeys[slot] != key) slot = (slot + 1) & mask;
+
+        int gap = slot;
+        for (int next = (gap + 1) & mask; indexKeys[next] != 0; next = (next + 1) & mask) {
+            int home = (int) indexKeys[next] & mask;
+            // The entry at next may fill the gap only if its home slot is not between gap and next
+            boolean movable = gap <= next ? (home <= gap || home > next) : (home <= gap && home > next);
+            if (movable) {
+                indexKeys[gap] = indexKeys[next];
+                indexPositions[gap] = indexPositions[next];
+                gap = next;
+            }
+        }
+        indexKeys[gap] = 0;
+    }
+
+    /**
+     * 64-bit hash of the word (FNV-1a followed by a final mix); never returns 0, the empty index key.
+     */
+    private static long hash64(byte[] word, int length) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < length; i++) h = (h ^ word[i]) * 0x100000001B3L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
+
+/**
+ * Word counts of a file up to some size, saved so the next run can start where this one stopped.
+ *
+ * Besides the counts, the snapshot records the file's size and modification
+ * time, a hash of its first bytes to notice a replaced file, and the last word
+ * (tail) with the offset where it starts. The tail is already counted, but the
+ * file may have been cut in the middle of it, so the next run subtracts it and
+ * rescans from tailStart.
+ */
+final class WordCountSnapshot {
+    private static final int MAGIC = 0x57435331; // "WCS1"
+    private static final int HEAD_BYTES = 4096;
+
+    final long size;
+    final long modified;
+    final long tailStart;
+    final byte[] tail;
+    final int headLength;
+    final long headHash;
+    final WordCounts counts;
+
+    private WordCountSnapshot(long size, long modified, long tailStart, byte[] tail,
+                              int headLength, long headHash, WordCounts counts) {
+        this.size = size;
+        this.modified = modified;
+        this.tailStart = tailStart;
+        this.tail = tail;
+        this.headLength = headLength;
+        this.headHash = headHash;
+        this.counts = counts;
+    }
+
+    /**
+     * Describes counts taken over the first size bytes of the channel.
+     */
+    static WordCountSnapshot of(FileChannel channel, long size, long modified, WordCounts counts) throws IOException {
+        // Walk back from the end over the last word, if the file ends inside one
+        long tailStart = size;
+        ByteBuffer window = ByteBuffer.allocate(HEAD_BYTES);
+        scan:
+        while (tailStart > 0) {
+            long start = Math.max(0, tailStart - window.capacity());
+            window.clear().limit((int) (tailStart - start));
+            while (window.hasRemaining() && channel.read(window, start + window.position()) > 0) {
+                // Keep reading until the window is full
+            }
+            for (int i = window.position() - 1; i >= 0; i--) {
+                if (!WordScanner.isWordByte(window.get(i))) break scan;
+                tailStart--;
+            }
+        }
+        if (size - tailStart > Integer.MAX_VALUE) {
+            throw new IOException("The last word of the file is too long to snapshot.");
+        }
+
+        ByteBuffer tailBytes = ByteBuffer.allocate((int) (size - tailStart));
+        while (tailBytes.hasRemaining() && channel.read(tailBytes, tailStart + tailBytes.position()) > 0) {
+            // Keep reading until the tail is complete
+        }
+        byte[][] tail = {new byte[0]};
+        WordScanner scanner = new WordScanner();
+        WordScanner.WordSink keep = (word, length, hash) -> tail[0] = Arrays.copyOf(word, length);
+        scanner.scan(tailBytes.array(), 0, tailBytes.position(), keep);
+        scanner.finish(keep);
+
+        int headLength = (int) Math.min(size, HEAD_BYTES);
+        return new WordCountSnapshot(size, modified, tailStart, tail[0], headLength, headHash(channel, headLength), counts);
+    }
+
+    /**
+     * Returns the saved snapshot, or null if there is none or it cannot be read.
+     */
+    static WordCountSnapshot load(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                System.out.println("Ignoring " + path + ": not a word count snapshot.");
+                return null;
+            }
+            long size = in.readLong();
+            long modified = in.readLong();
+            long tailStart = in.readLong();
+            byte[] tail = new byte[readLength(in, 1)];
+            in.readFully(tail);
+            int headLength = in.readInt();
+            if (headLength < 0 || headLength > HEAD_BYTES) {
+                throw new IOException("head length " + headLength + " is out of range.");
+            }
+            long headHash = in.readLong();
+            WordCounts counts = WordCounts.readFrom(in);
+            return new WordCountSnapshot(size, modified, tailStart, tail, headLength, headHash, counts);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable snapshot " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and renames it, so a crash never leaves a half-written snapshot.
+     */
+    void save(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeLong(tailStart);
+            writeVarInt(out, tail.length);
+            out.write(tail);
+            out.writeInt(headLength);
+            out.writeLong(headHash);
+            counts.writeTo(out);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * True when the file still starts with the bytes the snapshot was taken from.
+     */
+    boolean headMatches(FileChannel channel) throws IOException {
+        return channel.size() >= headLength && headHash(channel, headLength) == headHash;
+    }
+
+    private static long headHash(FileChannel channel, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(length);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            // Keep reading until the head is complete
+        }
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < head.position(); i++) h = (h ^ head.get(i)) * 0x100000001B3L; // FNV-1a
+        return h;
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads a length or count of items that each take at least bytesPerItem bytes,
+     * rejecting values that cannot fit in the rest of the file. For a file stream,
+     * available() is exactly the number of bytes left, so a corrupt snapshot
+     * fails here instead of allocating a negative or huge array.
+     */
+    static int readLength(DataInputStream in, int bytesPerItem) throws IOException {
+        int value = readVarInt(in);
+        if (value < 0 || (long) value * bytesPerItem > in.available()) {
+            throw new IOException("length " + value + " runs past the end of the file.");
+        }
+        return value;
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in snapshot.");
+    }
 }
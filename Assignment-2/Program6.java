@@ -1,8 +1,72 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DirectoryListerDemo {
 
+    // Benchmarked results feed this field so the JIT cannot drop the work
+    private static volatile long sink;
+
+    private static final String NEWLINE = System.lineSeparator();
+
     public static void main(String[] args) {
+        // "java DirectoryListerDemo walk [path] [threads]" totals a whole tree in parallel
+        if (args.length > 0 && args[0].equalsIgnoreCase("walk")) {
+            String root = args.length > 1 ? args[1] : ".";
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            displayTreeTotals(root, threads);
+            return;
+        }
+
+        // "java DirectoryListerDemo list [path] [glob]" streams one folder, optionally filtered by a glob like "*.java"
+        if (args.length > 0 && args[0].equalsIgnoreCase("list")) {
+            listFiles(args.length > 1 ? args[1] : ".", args.length > 2 ? args[2] : null);
+            return;
+        }
+
+        // "java DirectoryListerDemo du [path] [threads] [cached]" shows which folders use the most space
+        if (args.length > 0 && args[0].equalsIgnoreCase("du")) {
+            String root = args.length > 1 ? args[1] : ".";
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            boolean cached = args.length > 3 && args[3].equalsIgnoreCase("cached");
+            displayDiskUsage(root, threads, cached);
+            return;
+        }
+
+        // "java DirectoryListerDemo bench [path]" times the recursive File-based walk against the parallel one
+        if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+            runBenchmarks(args.length > 1 ? args[1] : ".");
+            return;
+        }
+
         // Specify the path to the directory you want to inspect.
         // You can change this to "C:\\" on Windows or "/" on macOS/Linux.
         String directoryPath = "."; // "." refers to the current working directory
@@ -22,7 +86,7 @@ public class DirectoryListerDemo {
             System.out.println("Error: The specified path does not exist.");
             return;
         }
-        
+
         if (!directory.isDirectory()) {
             System.out.println("Error: The specified path is a file, not a directory.");
             return;
@@ -57,7 +121,621 @@ public class DirectoryListerDemo {
                 System.out.printf("[OTHER]  %s%n", item.getName());
             }
         }
-        
+
         System.out.println("======================================================");
     }
+
+    /**
+     * Displays the entries immediately inside the given directory like
+     * displayFiles, but streams them: entries are read lazily from a
+     * DirectoryStream and written through one buffered writer, so memory use
+     * stays flat even for folders with millions of entries.
+     *
+     * When glob is given (for example "*.log"), only matching names are
+     * returned by the stream, and non-matching entries are never inspected.
+     */
+    public static void listFiles(String directoryPath, String glob) {
+        Path directory = Paths.get(directoryPath);
+
+        if (!Files.exists(directory)) {
+            System.out.println("Error: The specified path does not exist.");
+            return;
+        }
+
+        if (!Files.isDirectory(directory)) {
+            System.out.println("Error: The specified path is a file, not a directory.");
+            return;
+        }
+
+        // One writer for the whole listing; System.out itself is flushed but not closed
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 64 * 1024);
+        try (DirectoryStream<Path> entries = glob == null
+                ? Files.newDirectoryStream(directory)
+                : Files.newDirectoryStream(directory, glob)) {
+            out.write("=== Contents of Directory: " + directory.toAbsolutePath().normalize() + " ===" + NEWLINE);
+
+            long listed = 0;
+            for (Path entry : entries) {
+                writeEntry(out, entry);
+                listed++;
+            }
+
+            if (listed == 0) {
+                out.write(glob == null ? "The directory is empty." : "No entries match " + glob + ".");
+                out.write(NEWLINE);
+            } else {
+                out.write("======================================================" + NEWLINE);
+            }
+        } catch (AccessDeniedException e) {
+            writeQuietly(out, "Error: Cannot access the contents of this directory (Permission denied)." + NEWLINE);
+        } catch (IOException | DirectoryIteratorException e) {
+            writeQuietly(out, "Error: Could not list the directory: " + e.getMessage() + NEWLINE);
+        } catch (IllegalArgumentException e) {
+            writeQuietly(out, "Error: Invalid glob pattern: " + e.getMessage() + NEWLINE);
+        } finally {
+            try {
+                out.flush();
+            } catch (IOException ignored) {
+                // Nothing more can be written to standard output anyway
+            }
+        }
+    }
+
+    /**
+     * Writes one entry in displayFiles' format, reading its attributes with a single call.
+     */
+    private static void writeEntry(Writer out, Path entry) throws IOException {
+        String name = entry.getFileName().toString();
+        BasicFileAttributes attributes;
+        try {
+            // Links are followed, like File.isDirectory() and File.isFile() do
+            attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // A broken link or an entry removed while listing
+            attributes = null;
+        }
+
+        if (attributes != null && attributes.isDirectory()) {
+            out.write("[FOLDER] ");
+            out.write(name);
+        } else if (attributes != null && attributes.isRegularFile()) {
+            out.write("[FILE]   ");
+            out.write(name);
+            // Same as "%-20s": pad short names to 20 characters
+            for (int i = name.length(); i < 20; i++) out.write(' ');
+            out.write(" (Size: ");
+            out.write(Long.toString(attributes.size()));
+            out.write(" bytes)");
+        } else {
+            out.write("[OTHER]  ");
+            out.write(name);
+        }
+        out.write(NEWLINE);
+    }
+
+    private static void writeQuietly(Writer out, String message) {
+        try {
+            out.write(message);
+        } catch (IOException ignored) {
+            // Nothing more can be written to standard output anyway
+        }
+    }
+
+    /**
+     * Walks the whole tree under directoryPath in parallel and displays how many
+     * files, folders and other entries it holds and how many bytes the files use.
+     */
+    public static void displayTreeTotals(String directoryPath, int threads) {
+        Path root = Paths.get(directoryPath);
+        if (!Files.isDirectory(root)) {
+            System.out.println("Error: The specified path does not exist or is not a directory.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        TreeTotals totals = walkTree(root, threads);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("=== Tree Under: " + root.toAbsolutePath().normalize() + " ===");
+        System.out.printf("Folders : %,d%n", totals.folders);
+        System.out.printf("Files   : %,d (%,d bytes)%n", totals.files, totals.bytes);
+        System.out.printf("Other   : %,d%n", totals.others);
+        if (totals.unreadable > 0) {
+            System.out.printf("Skipped : %,d folder(s) that could not be read%n", totals.unreadable);
+        }
+        System.out.printf("Walked in %.1f ms on %d thread(s)%n", elapsed / 1e6, threads);
+        System.out.println("======================================================");
+    }
+
+    /**
+     * Displays the total size of the tree under directoryPath and the folders
+     * that use the most space, counting everything below each folder.
+     *
+     * Every run saves per-folder results under the user's home directory. With
+     * useCache, a folder whose modification time has not changed since then is
+     * not listed again; only its subfolders are checked. That is much faster but
+     * may be stale: a file growing in place does not change its folder's
+     * modification time, so the default is a full scan.
+     */
+    public static void displayDiskUsage(String directoryPath, int threads, boolean useCache) {
+        Path root = Paths.get(directoryPath).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            System.out.println("Error: The specified path does not exist or is not a directory.");
+            return;
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+
+        Path cacheFile = DiskUsage.cacheFileFor(root);
+        DiskUsage usage = new DiskUsage(root, useCache ? cacheFile : null);
+
+        long start = System.nanoTime();
+        TreeTotals totals;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            totals = pool.invoke(usage.task());
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("=== Disk Usage Under: " + root + " ===");
+        System.out.printf("Total   : %,d bytes in %,d files and %,d folders%n", totals.bytes, totals.files, totals.folders);
+        System.out.println("Largest folders:");
+        for (Map.Entry<Path, TreeTotals> entry : usage.largest(20)) {
+            TreeTotals folder = entry.getValue();
+            System.out.printf("  %,18d bytes %,12d files  %s%n", folder.bytes, folder.files, entry.getKey());
+        }
+        if (totals.unreadable > 0) {
+            System.out.printf("Skipped : %,d folder(s) that could not be read%n", totals.unreadable);
+        }
+        if (useCache) {
+            System.out.printf("Cache   : %,d folder(s) reused, %,d listed%n", usage.reused(), usage.listed());
+            if (usage.reused() > 0) {
+                System.out.println("          Reused folders may be stale: files that grew in place since the last run");
+                System.out.println("          are counted at their old size. Run without \"cached\" for exact totals.");
+            }
+        }
+        System.out.printf("Scanned in %.1f ms on %d thread(s)%n", elapsed / 1e6, threads);
+
+        try {
+            usage.saveCache(cacheFile);
+        } catch (IOException e) {
+            System.out.println("Could not save the cache: " + e.getMessage());
+        }
+        System.out.println("======================================================");
+    }
+
+    static TreeTotals walkTree(Path root, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1.");
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new WalkTask(root));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Totals one directory and, through forked subtasks, everything below it.
+     *
+     * Each entry's attributes are read once, with a single stat call, instead
+     * of asking isDirectory(), isFile() and length() separately. Symbolic links
+     * are not followed, so link cycles cannot trap the walk; they count as other.
+     */
+    private static class WalkTask extends RecursiveTask<TreeTotals> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        WalkTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected TreeTotals compute() {
+            TreeTotals totals = new TreeTotals();
+            List<WalkTask> subfolders = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        // The entry vanished or cannot be inspected; count it as other
+                        totals.others++;
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        totals.folders++;
+                        WalkTask task = new WalkTask(entry);
+                        task.fork();
+                        subfolders.add(task);
+                    } else if (attributes.isRegularFile()) {
+                        totals.files++;
+                        totals.bytes += attributes.size();
+                    } else {
+                        totals.others++;
+                    }
+                }
+            } catch (IOException | SecurityException e) {
+                totals.unreadable++;
+            }
+
+            for (WalkTask task : subfolders) {
+                totals.add(task.join());
+            }
+            return totals;
+        }
+    }
+
+    /**
+     * The same totals computed the old way: File.listFiles() plus separate
+     * isDirectory(), isFile() and length() calls per entry, one folder at a time.
+     */
+    private static TreeTotals walkTreeWithFile(File directory) {
+        TreeTotals totals = new TreeTotals();
+        File[] contents = directory.listFiles();
+        if (contents == null) {
+            totals.unreadable++;
+            return totals;
+        }
+        for (File item : contents) {
+            if (item.isDirectory() && !Files.isSymbolicLink(item.toPath())) {
+                totals.folders++;
+                totals.add(walkTreeWithFile(item));
+            } else if (item.isFile() && !Files.isSymbolicLink(item.toPath())) {
+                totals.files++;
+                totals.bytes += item.length();
+            } else {
+                totals.others++;
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Times walkTreeWithFile against walkTree on 1 thread and on every core, then
+     * displayFiles against listFiles on a generated folder of 20,000 files.
+     */
+    private static void runBenchmarks(String directoryPath) {
+        Path root = Paths.get(directoryPath);
+        if (!Files.isDirectory(root)) {
+            System.out.println("Error: The specified path does not exist or is not a directory.");
+            return;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("=== Walking " + root.toAbsolutePath().normalize() + " ===");
+        benchmark("File.listFiles, sequential", 1, () -> sink += walkTreeWithFile(root.toFile()).files);
+        benchmark("walkTree, 1 thread", 1, () -> sink += walkTree(root, 1).files);
+        if (cores > 1) {
+            benchmark("walkTree, " + cores + " threads", 1, () -> sink += walkTree(root, cores).files);
+        }
+
+        Path folder = null;
+        try {
+            folder = Files.createTempDirectory("lister-bench");
+            for (int i = 0; i < 20_000; i++) Files.createFile(folder.resolve("file-" + i + ".txt"));
+            String path = folder.toString();
+
+            System.out.println("=== Listing a folder of 20,000 files (output discarded) ===");
+            // Output goes to a stream that drops everything, so only the listing itself is timed
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            benchmark("displayFiles", 1, () -> printingTo(discard, () -> displayFiles(path)));
+            benchmark("listFiles", 1, () -> printingTo(discard, () -> listFiles(path, null)));
+        } catch (IOException e) {
+            System.out.println("Could not create the benchmark folder: " + e.getMessage());
+        } finally {
+            deleteQuietly(folder);
+        }
+    }
+
+    /**
+     * Runs task with System.out pointing at out, restoring the console afterwards.
+     */
+    private static void printingTo(PrintStream out, Runnable task) {
+        PrintStream console = System.out;
+        System.setOut(out);
+        try {
+            task.run();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static void deleteQuietly(Path folder) {
+        if (folder == null) return;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry : entries) Files.delete(entry);
+            Files.delete(folder);
+        } catch (IOException ignored) {
+            // Leftovers stay in the temporary directory
+        }
+    }
+
+    /**
+     * Runs task reps times per measurement: 3 warm-up runs for the JIT, then 7 timed
+     * runs, reporting the best and median time per call.
+     */
+    private static void benchmark(String label, int reps, Runnable task) {
+        final int warmups = 3;
+        final int runs = 7;
+        for (int i = 0; i < warmups * reps; i++) task.run();
+
+        long[] times = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) task.run();
+            times[r] = (System.nanoTime() - start) / reps;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-36s best %,12.4f ms   median %,12.4f ms%n", label, times[0] / 1e6, times[runs / 2] / 1e6);
+    }
+}
+
+/**
+ * Counts gathered while walking a directory tree.
+ */
+class TreeTotals {
+    long folders;
+    long files;
+    long others;
+    long bytes;
+    long unreadable;
+
+    void add(TreeTotals other) {
+        folders += other.folders;
+        files += other.files;
+        others += other.others;
+        bytes += other.bytes;
+        unreadable += other.unreadable;
+    }
+}
+
+/**
+ * Computes cumulative folder sizes in parallel, reusing what an earlier run
+ * learned about folders that have not changed since.
+ *
+ * For every folder the cache keeps its modification time, the files and
+ * bytes directly inside it, and the names of its subfolders. A folder's
+ * modification time changes whenever an entry is added, removed or renamed in
+ * it, so when it still matches, the folder does not need to be listed and its
+ * files do not need to be stat'ed. Its subfolders are still visited, since a
+ * change deeper down does not touch this folder's modification time.
+ */
+class DiskUsage {
+    private static final int MAGIC = 0x44555331; // "DUS1"
+
+    /**
+     * What one folder holds directly, as stored in the cache.
+     */
+    private static final class FolderRecord {
+        final long modified;
+        final long files;
+        final long bytes;
+        final long others;
+        final String[] subfolders;
+
+        FolderRecord(long modified, long files, long bytes, long others, String[] subfolders) {
+            this.modified = modified;
+            this.files = files;
+            this.bytes = bytes;
+            this.others = others;
+            this.subfolders = subfolders;
+        }
+    }
+
+    private final Path root;
+    private final Map<String, FolderRecord> previous;
+    private final Map<String, FolderRecord> current = new ConcurrentHashMap<>();
+    private final Map<Path, TreeTotals> cumulative = new ConcurrentHashMap<>();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder listed = new LongAdder();
+
+    /**
+     * @param cacheFile Cache from an earlier run, or null to list every folder.
+     */
+    DiskUsage(Path root, Path cacheFile) {
+        this.root = root;
+        this.previous = cacheFile == null ? new HashMap<>() : loadCache(cacheFile, root);
+    }
+
+    /**
+     * The cache for root lives in the user's own ~/.cache, not the shared temporary
+     * directory, so other users cannot plant or swap it.
+     */
+    static Path cacheFileFor(Path root) {
+        return Paths.get(System.getProperty("user.home"), ".cache", "DirectoryListerDemo",
+                "du-" + Integer.toHexString(root.toString().hashCode()) + ".cache");
+    }
+
+    RecursiveTask<TreeTotals> task() {
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(root).to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            modified = Long.MIN_VALUE;
+        }
+        return new FolderTask(root, modified);
+    }
+
+    long reused() {
+        return reused.sum();
+    }
+
+    long listed() {
+        return listed.sum();
+    }
+
+    /**
+     * Returns the n folders below the root with the largest cumulative size, largest first.
+     */
+    List<Map.Entry<Path, TreeTotals>> largest(int n) {
+        List<Map.Entry<Path, TreeTotals>> folders = new ArrayList<>(cumulative.entrySet());
+        folders.removeIf(entry -> entry.getKey().equals(root));
+        folders.sort((a, b) -> Long.compare(b.getValue().bytes, a.getValue().bytes));
+        return folders.subList(0, Math.min(n, folders.size()));
+    }
+
+    private final class FolderTask extends RecursiveTask<TreeTotals> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path folder;
+        private final long modified;
+
+        FolderTask(Path folder, long modified) {
+            this.folder = folder;
+            this.modified = modified;
+        }
+
+        @Override
+        protected TreeTotals compute() {
+            String key = folder.toString();
+            FolderRecord record = previous.get(key);
+            List<FolderTask> subfolders = new ArrayList<>();
+            TreeTotals totals = new TreeTotals();
+
+            if (record != null && record.modified == modified) {
+                reused.increment();
+                for (String name : record.subfolders) {
+                    Path subfolder = folder.resolve(name);
+                    try {
+                        subfolders.add(new FolderTask(subfolder, Files.readAttributes(subfolder,
+                                BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).lastModifiedTime().to(TimeUnit.NANOSECONDS)));
+                    } catch (IOException e) {
+                        // Removed since the folder was cached; the next run will list the parent again
+                    }
+                }
+            } else {
+                record = list(subfolders);
+                if (record == null) {
+                    totals.unreadable++;
+                    cumulative.put(folder, totals);
+                    return totals;
+                }
+            }
+            current.put(key, record);
+
+            for (FolderTask task : subfolders) task.fork();
+            totals.files = record.files;
+            totals.bytes = record.bytes;
+            totals.others = record.others;
+            totals.folders = subfolders.size();
+            for (FolderTask task : subfolders) totals.add(task.join());
+
+            cumulative.put(folder, totals);
+            return totals;
+        }
+
+        /**
+         * Lists the folder, reading each entry's attributes once. Returns null if it cannot be read.
+         */
+        private FolderRecord list(List<FolderTask> subfolders) {
+            listed.increment();
+            long files = 0;
+            long bytes = 0;
+            long others = 0;
+            List<String> names = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        others++;
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        names.add(entry.getFileName().toString());
+                        subfolders.add(new FolderTask(entry, attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)));
+                    } else if (attributes.isRegularFile()) {
+                        files++;
+                        bytes += attributes.size();
+                    } else {
+                        others++;
+                    }
+                }
+            } catch (IOException | SecurityException e) {
+                subfolders.clear();
+                return null;
+            }
+            return new FolderRecord(modified, files, bytes, others, names.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Writes the records gathered by this run to a new temporary file next to the
+     * cache (createTempFile never reuses an existing file), then renames it over the old cache.
+     */
+    void saveCache(Path cacheFile) throws IOException {
+        Files.createDirectories(cacheFile.getParent());
+        Path temporary = Files.createTempFile(cacheFile.getParent(), "du-", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(root.toString());
+            out.writeInt(current.size());
+            for (Map.Entry<String, FolderRecord> entry : current.entrySet()) {
+                FolderRecord record = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(record.modified);
+                out.writeLong(record.files);
+                out.writeLong(record.bytes);
+                out.writeLong(record.others);
+                out.writeInt(record.subfolders.length);
+                for (String name : record.subfolders) out.writeUTF(name);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a cache written for the same root; a missing or unreadable cache is treated as empty.
+     */
+    private static Map<String, FolderRecord> loadCache(Path cacheFile, Path root) {
+        Map<String, FolderRecord> records = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(root.toString())) return records;
+            // A record is at least an empty path, four longs and a subfolder count
+            int count = readCount(in, 2 + 4 * 8 + 4);
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long modified = in.readLong();
+                long files = in.readLong();
+                long bytes = in.readLong();
+                long others = in.readLong();
+                String[] subfolders = new String[readCount(in, 2)];
+                for (int j = 0; j < subfolders.length; j++) subfolders[j] = in.readUTF();
+                records.put(path, new FolderRecord(modified, files, bytes, others, subfolders));
+            }
+        } catch (NoSuchFileException e) {
+            // First run for this root
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable cache " + cacheFile + ": " + e.getMessage());
+            records.clear();
+        }
+        return records;
+    }
+
+    /**
+     * Reads a count of items that each take at least bytesPerItem bytes, rejecting
+     * values that cannot fit in the rest of the file (available() of a file stream
+     * is the number of bytes left), so a corrupt cache never sizes a huge or negative array.
+     */
+    private static int readCount(DataInputStream in, int bytesPerItem) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || (long) count * bytesPerItem > in.available()) {
+            throw new IOException("count " + count + " runs past the end of the file.");
+        }
+        return count;
+    }
 }
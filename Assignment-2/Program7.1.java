@@ -1,16 +1,79 @@
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class EchoServer {
+    static final String ECHO_PREFIX = "Server Echo: ";
+    static final byte[] ECHO_PREFIX_BYTES = ECHO_PREFIX.getBytes(StandardCharsets.UTF_8);
+    // Lines longer than this are treated as a misbehaving client and the connection is dropped
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+    // Sent as the first line to switch a connection to binary frames; see FrameTracker
+    static final String BINARY_REQUEST = "MODE BINARY";
+    static final byte[] BINARY_ACCEPTED = "OK BINARY\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Usage: java EchoServer [classic|nio|virtual] [port] [options]
+     * "classic" (the default) serves a single client and exits. The other modes
+     * serve many clients at once until the process is stopped:
+     *   nio [port] [event loop threads]
+     *   virtual [port] [max connections] [idle timeout seconds]
+     */
     public static void main(String[] args) {
-        int port = 5000; // The port the server will listen on
+        String mode = args.length > 0 ? args[0].toLowerCase() : "classic";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5000; // The port the server will listen on
+
+        switch (mode) {
+            case "classic":
+                runSingleClient(port);
+                break;
+            case "nio":
+                int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+                try {
+                    new NioEchoServer(port, threads).run();
+                } catch (IOException e) {
+                    System.out.println("Server exception: " + e.getMessage());
+                }
+                break;
+            case "virtual":
+                int maxConnections = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+                int idleSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+                runThreadPerConnection(port, maxConnections, idleSeconds);
+                break;
+            default:
+                System.out.println("Error: Unknown mode. Please use 'classic', 'nio' or 'virtual'.");
+        }
+    }
 
+    /**
+     * The original blocking server: accepts one client, echoes its lines, then exits.
+     */
+    static void runSingleClient(int port) {
         System.out.println("=== Echo Server Started ===");
-        
+
         // 1. Create a ServerSocket to listen for incoming connections
         try (ServerSocket serverSocket = new ServerSocket(port)) {
             System.out.println("Listening for connections on port " + port + "...");
@@ -19,32 +82,685 @@ public class EchoServer {
             Socket clientSocket = serverSocket.accept();
             System.out.println("Client connected from: " + clientSocket.getInetAddress());
 
-            // 3. Set up input and output streams for communication
-            try (
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)
-            ) {
-                String inputLine;
-                
-                // 4. Read messages from the client in a loop
-                while ((inputLine = in.readLine()) != null) {
-                    System.out.println("Received from client: " + inputLine);
-                    
+            handleClient(clientSocket, true);
+
+        } catch (IOException e) {
+            System.out.println("Server exception: " + e.getMessage());
+        } finally {
+            AsyncLog.drain();
+        }
+    }
+
+    /**
+     * Accepts clients forever and serves each one on its own virtual thread with
+     * the same blocking code as the classic server. Up to maxConnections clients
+     * are served at once; further clients are told the server is busy and closed.
+     * A client that sends nothing for idleSeconds is disconnected.
+     */
+    static void runThreadPerConnection(int port, int maxConnections, int idleSeconds) {
+        if (maxConnections < 1 || idleSeconds < 1) {
+            throw new IllegalArgumentException("Connection limit and idle timeout must be positive.");
+        }
+        System.out.println("=== Echo Server Started (thread per connection, limit " + maxConnections
+                + ", idle timeout " + idleSeconds + "s) ===");
+
+        Semaphore connectionSlots = new Semaphore(maxConnections);
+        ExecutorService executor = newVirtualThreadExecutor();
+
+        try (ServerSocket serverSocket = new ServerSocket(port, 1024)) {
+            System.out.println("Listening for connections on port " + port + "...");
+
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                if (!connectionSlots.tryAcquire()) {
+                    rejectBusy(clientSocket);
+                    continue;
+                }
+                try {
+                    clientSocket.setSoTimeout(idleSeconds * 1000);
+                    clientSocket.setTcpNoDelay(true);
+                    executor.execute(() -> {
+                        try {
+                            handleClient(clientSocket, false);
+                        } finally {
+                            connectionSlots.release();
+                        }
+                    });
+                } catch (IOException | RuntimeException e) {
+                    connectionSlots.release();
+                    AsyncLog.log("Could not start a handler for a connection: " + e);
+                    // A failed close must not escape and stop the accept loop
+                    try {
+                        clientSocket.close();
+                    } catch (IOException closeFailure) {
+                        AsyncLog.log("Could not close the connection: " + closeFailure.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Server exception: " + e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Echoes lines from one client until it sends "bye", disconnects or times out,
+     * then closes the socket.
+     *
+     * Every complete line that arrived in one read is answered into a single
+     * output buffer, which is flushed once per read. A client that pipelines
+     * many lines therefore costs one write call per batch instead of one per line.
+     * A client whose first line is "MODE BINARY" is switched to binary frames.
+     */
+    static void handleClient(Socket clientSocket, boolean logLines) {
+        // 3. Set up input and output streams for communication
+        try (
+            Socket socket = clientSocket;
+            InputStream in = socket.getInputStream();
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024)
+        ) {
+            byte[] buffer = new byte[8 * 1024];
+            int filled = 0;
+            int read;
+            boolean firstLine = true;
+
+            // 4. Read messages from the client in a loop
+            while ((read = in.read(buffer, filled, buffer.length - filled)) > 0) {
+                int scanFrom = filled;
+                filled += read;
+                int lineStart = 0;
+
+                for (int i = scanFrom; i < filled; i++) {
+                    if (buffer[i] != '\n') continue;
+                    int lineEnd = i > lineStart && buffer[i - 1] == '\r' ? i - 1 : i;
+                    if (firstLine && isBinaryRequest(buffer, lineStart, lineEnd - lineStart)) {
+                        out.write(BINARY_ACCEPTED);
+                        if (logLines) AsyncLog.log("Client switched to binary frames.");
+                        echoFrames(in, out, ByteBuffer.wrap(buffer), i + 1, filled);
+                        return;
+                    }
+                    firstLine = false;
+                    if (logLines) {
+                        AsyncLog.log("Received from client: "
+                                + new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+                    }
+
                     // Echo the message back to the client
-                    out.println("Server Echo: " + inputLine);
-                    
-                    // Break the loop if the client sends "bye"
-                    if ("bye".equalsIgnoreCase(inputLine)) {
-                        System.out.println("Client disconnected.");
-                        break;
+                    out.write(ECHO_PREFIX_BYTES);
+                    out.write(buffer, lineStart, lineEnd - lineStart);
+                    out.write('\n');
+
+                    // Stop if the client sends "bye"
+                    if (isBye(buffer, lineStart, lineEnd - lineStart)) {
+                        out.flush();
+                        if (logLines) AsyncLog.log("Client disconnected.");
+                        return;
                     }
+                    lineStart = i + 1;
+                }
+                out.flush();
+
+                // Keep the unfinished line at the front of the buffer, growing it for long lines
+                filled -= lineStart;
+                System.arraycopy(buffer, lineStart, buffer, 0, filled);
+                if (filled == buffer.length) {
+                    if (buffer.length >= MAX_LINE_LENGTH) {
+                        AsyncLog.log("Line longer than " + MAX_LINE_LENGTH + " bytes; closing connection.");
+                        return;
+                    }
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
                 }
-            } catch (IOException e) {
-                System.out.println("Error communicating with client: " + e.getMessage());
             }
 
+            // Like readLine(), a last line without '\n' is still answered before closing
+            if (filled > 0) {
+                int lineEnd = buffer[filled - 1] == '\r' ? filled - 1 : filled;
+                if (logLines) {
+                    AsyncLog.log("Received from client: " + new String(buffer, 0, lineEnd, StandardCharsets.UTF_8));
+                }
+                out.write(ECHO_PREFIX_BYTES);
+                out.write(buffer, 0, lineEnd);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (SocketTimeoutException e) {
+            // The idle timeout expired; closing the socket is all that is needed
         } catch (IOException e) {
-            System.out.println("Server exception: " + e.getMessage());
+            AsyncLog.log("Error communicating with client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Echoes binary frames until the client closes or sends an empty frame. Bytes
+     * go back out exactly as they were read, straight from the receive buffer,
+     * without being decoded; only the frame lengths are looked at.
+     * The buffer's [from, filled) range holds bytes already read after the handshake.
+     */
+    private static void echoFrames(InputStream in, OutputStream out, ByteBuffer buffer,
+                                   int from, int filled) throws IOException {
+        byte[] bytes = buffer.array();
+        FrameTracker frames = new FrameTracker();
+        while (true) {
+            int end = frames.scan(buffer, from, filled);
+            if (end < 0) {
+                AsyncLog.log("Frame longer than " + FrameTracker.MAX_FRAME_LENGTH + " bytes; closing connection.");
+                return;
+            }
+            out.write(bytes, from, end - from);
+            out.flush();
+            if (frames.isClosed()) return;
+
+            from = 0;
+            filled = in.read(bytes, 0, bytes.length);
+            if (filled < 0) return;
         }
     }
+
+    static boolean isBinaryRequest(byte[] line, int offset, int length) {
+        if (length != BINARY_REQUEST.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (line[offset + i] != BINARY_REQUEST.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * True when the line is "bye" in any letter case.
+     */
+    static boolean isBye(byte[] line, int offset, int length) {
+        return length == 3
+                && (line[offset] | 0x20) == 'b'
+                && (line[offset + 1] | 0x20) == 'y'
+                && (line[offset + 2] | 0x20) == 'e';
+    }
+
+    private static void rejectBusy(Socket clientSocket) {
+        try (Socket socket = clientSocket) {
+            socket.getOutputStream().write("Server busy, try again later.\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {
+            // The client is being turned away anyway
+        }
+    }
+
+    // A virtual thread per connection on JDK 21+, otherwise a platform thread per connection
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            System.out.println("Virtual threads are not available on this JDK; using platform threads instead.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
+
+/**
+ * Non-blocking echo server built on a Selector event loop.
+ *
+ * One thread accepts connections and hands them round-robin to a fixed set
+ * of event loops, each a single thread multiplexing thousands of channels.
+ * A loop owns one direct read buffer and one direct write buffer that are
+ * reused for every connection it serves. Per-connection memory is only an
+ * unfinished line and output the socket could not take yet.
+ *
+ * The protocol is the same as the classic server: each '\n'-terminated line is
+ * answered with "Server Echo: " + line, and after answering "bye" the server
+ * closes that connection. A first line of "MODE BINARY" switches the
+ * connection to length-prefixed frames (see FrameTracker).
+ */
+class NioEchoServer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINE_LENGTH = EchoServer.MAX_LINE_LENGTH;
+    private static final byte[] PREFIX = EchoServer.ECHO_PREFIX_BYTES;
+    private static final byte[] BYE = "bye".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BINARY_REQUEST = EchoServer.BINARY_REQUEST.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final int port;
+    private final EventLoop[] loops;
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    NioEchoServer(int port, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one event loop thread is required.");
+        }
+        this.port = port;
+        this.loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) loops[i] = new EventLoop();
+    }
+
+    void run() throws IOException {
+        System.out.println("=== NIO Echo Server Started (" + loops.length + " event loop(s)) ===");
+        for (int i = 0; i < loops.length; i++) {
+            new Thread(loops[i], "EventLoop-" + i).start();
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            System.out.println("Listening for connections on port " + port + "...");
+
+            // Accepting stays blocking on this thread; only the connections themselves are non-blocking
+            for (int next = 0; ; next = (next + 1) % loops.length) {
+                SocketChannel client = server.accept();
+                client.configureBlocking(false);
+                client.socket().setTcpNoDelay(true);
+                loops[next].register(client);
+            }
+        }
+    }
+
+    /**
+     * State kept between events for one client.
+     */
+    private static final class Connection {
+        byte[] partialLine = new byte[0]; // Bytes of a line whose '\n' has not arrived yet
+        int partialLength;
+        ByteBuffer pendingOutput;         // Echoes the socket has not accepted yet (null when none)
+        boolean closeAfterFlush;          // Set once "bye" has been answered
+        boolean firstLine = true;         // Only the first line may ask for binary frames
+        FrameTracker frames;              // Non-null once the client switched to binary frames
+
+        void appendPartial(ByteBuffer source, int length) {
+            if (partialLength + length > partialLine.length) {
+                partialLine = Arrays.copyOf(partialLine, Math.max(partialLength + length, partialLine.length * 2));
+            }
+            source.get(partialLine, partialLength, length);
+            partialLength += length;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Called from the acceptor thread; the channel is registered by the loop itself.
+         */
+        void register(SocketChannel channel) {
+            newChannels.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    System.out.println("Selector failed: " + e.getMessage());
+                    return;
+                }
+
+                SocketChannel channel;
+                while ((channel = newChannels.poll()) != null) {
+                    try {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection());
+                        int open = openConnections.incrementAndGet();
+                        if (open % 1000 == 0) AsyncLog.log("Open connections: " + open);
+                    } catch (IOException e) {
+                        closeQuietly(channel);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isWritable()) onWritable(key);
+                        if (key.isValid() && key.isReadable()) onReadable(key);
+                    } catch (IOException e) {
+                        close(key);
+                    } catch (RuntimeException e) {
+                        // One bad connection (or a key cancelled under us) must not stop the loop for all the others
+                        AsyncLog.log("Closing connection after unexpected error: " + e);
+                        close(key);
+                    }
+                }
+            }
+        }
+
+        private void onReadable(SelectionKey key) throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            Connection connection = (Connection) key.attachment();
+
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                if (connection.frames == null && connection.partialLength > 0) {
+                    echoLastLine(key, connection);
+                } else {
+                    close(key);
+                }
+                return;
+            }
+            readBuffer.flip();
+
+            writeBuffer.clear();
+            // Answer every complete line in what was read
+            while (readBuffer.hasRemaining() && !connection.closeAfterFlush) {
+                if (connection.frames != null) {
+                    if (!echoFrames(key, connection)) return;
+                    break;
+                }
+                int lineEnd = indexOf(readBuffer, (byte) '\n');
+                if (lineEnd < 0) {
+                    int remaining = readBuffer.remaining();
+                    if (connection.partialLength + remaining > MAX_LINE_LENGTH) {
+                        close(key);
+                        return;
+                    }
+                    connection.appendPartial(readBuffer, remaining);
+                    break;
+                }
+                echoLine(key, connection, lineEnd);
+            }
+            flush(key, connection);
+        }
+
+        /**
+         * Writes "Server Echo: " + line + "\n" for the line ending at lineEnd,
+         * including any bytes saved from earlier reads.
+         */
+        private void echoLine(SelectionKey key, Connection connection, int lineEnd) throws IOException {
+            int start = readBuffer.position();
+            int contentEnd = lineEnd;
+            // Strip the '\r' of "\r\n" endings, like BufferedReader.readLine()
+            if (contentEnd > start && readBuffer.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            } else if (contentEnd == start && connection.partialLength > 0
+                    && connection.partialLine[connection.partialLength - 1] == '\r') {
+                connection.partialLength--;
+            }
+
+            if (connection.firstLine) {
+                connection.firstLine = false;
+                if (lineEquals(connection, start, contentEnd, BINARY_REQUEST, false)) {
+                    put(key, connection, EchoServer.BINARY_ACCEPTED, 0, EchoServer.BINARY_ACCEPTED.length);
+                    connection.partialLength = 0;
+                    connection.frames = new FrameTracker();
+                    readBuffer.position(lineEnd + 1);
+                    return;
+                }
+            }
+            boolean bye = lineEquals(connection, start, contentEnd, BYE, true);
+
+            put(key, connection, PREFIX, 0, PREFIX.length);
+            put(key, connection, connection.partialLine, 0, connection.partialLength);
+            ByteBuffer content = readBuffer.duplicate();
+            content.limit(contentEnd);
+            put(key, connection, content);
+            put(key, connection, NEWLINE, 0, NEWLINE.length);
+
+            connection.partialLength = 0;
+            readBuffer.position(lineEnd + 1);
+            if (bye) connection.closeAfterFlush = true;
+        }
+
+        /**
+         * Answers a final line the client ended with end of stream instead of '\n',
+         * as readLine() would, then closes once the reply is written.
+         */
+        private void echoLastLine(SelectionKey key, Connection connection) throws IOException {
+            int length = connection.partialLength;
+            if (connection.partialLine[length - 1] == '\r') length--;
+            writeBuffer.clear();
+            put(key, connection, PREFIX, 0, PREFIX.length);
+            put(key, connection, connection.partialLine, 0, length);
+            put(key, connection, NEWLINE, 0, NEWLINE.length);
+            connection.partialLength = 0;
+            connection.closeAfterFlush = true;
+            flush(key, connection);
+        }
+
+        /**
+         * Compares the saved partial line followed by readBuffer[start, end) with expected.
+         */
+        private boolean lineEquals(Connection connection, int start, int end, byte[] expected, boolean ignoreCase) {
+            if (connection.partialLength + (end - start) != expected.length) return false;
+            for (int i = 0; i < expected.length; i++) {
+                byte b = i < connection.partialLength
+                        ? connection.partialLine[i]
+                        : readBuffer.get(start + i - connection.partialLength);
+                if (ignoreCase ? Character.toLowerCase((char) b) != expected[i] : b != expected[i]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Echoes the binary frames in the rest of the read buffer. The bytes are
+         * written to the socket straight from the read buffer, without passing
+         * through the write buffer. Returns false if the connection was closed.
+         */
+        private boolean echoFrames(SelectionKey key, Connection connection) throws IOException {
+            int from = readBuffer.position();
+            int end = connection.frames.scan(readBuffer, from, readBuffer.limit());
+            // Anything queued before the frames, such as the handshake reply, goes first
+            flush(key, connection);
+            if (end < 0) {
+                close(key);
+                return false;
+            }
+            ByteBuffer echo = readBuffer.duplicate();
+            echo.limit(end);
+            send(key, echo);
+
+            // Bytes after an empty frame are ignored; the session is over
+            readBuffer.position(connection.frames.isClosed() ? readBuffer.limit() : end);
+            if (connection.frames.isClosed()) connection.closeAfterFlush = true;
+            return true;
+        }
+
+        private void put(SelectionKey key, Connection connection, byte[] bytes, int offset, int length) throws IOException {
+            put(key, connection, ByteBuffer.wrap(bytes, offset, length));
+        }
+
+        /**
+         * Appends to the loop's write buffer, writing it out whenever it fills up.
+         */
+        private void put(SelectionKey key, Connection connection, ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                if (!writeBuffer.hasRemaining()) {
+                    flush(key, connection);
+                    writeBuffer.clear();
+                }
+                int chunk = Math.min(bytes.remaining(), writeBuffer.remaining());
+                ByteBuffer slice = bytes.duplicate();
+                slice.limit(slice.position() + chunk);
+                writeBuffer.put(slice);
+                bytes.position(bytes.position() + chunk);
+            }
+        }
+
+        /**
+         * Sends the write buffer in one write call. Whatever the socket does not
+         * accept is kept on the connection, and reading pauses until it drains,
+         * so a slow reader cannot make the server buffer without limit.
+         */
+        private void flush(SelectionKey key, Connection connection) throws IOException {
+            writeBuffer.flip();
+            send(key, writeBuffer);
+            writeBuffer.clear();
+            if (connection.pendingOutput == null && connection.closeAfterFlush) {
+                close(key);
+            }
+        }
+
+        /**
+         * Writes the bytes unless earlier output is still waiting, and keeps
+         * whatever the socket does not accept for onWritable().
+         */
+        private void send(SelectionKey key, ByteBuffer bytes) throws IOException {
+            Connection connection = (Connection) key.attachment();
+            if (connection.pendingOutput == null) {
+                ((SocketChannel) key.channel()).write(bytes);
+            }
+            if (bytes.hasRemaining()) {
+                connection.pendingOutput = append(connection.pendingOutput, bytes);
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void onWritable(SelectionKey key) throws IOException {
+            Connection connection = (Connection) key.attachment();
+            ((SocketChannel) key.channel()).write(connection.pendingOutput);
+            if (connection.pendingOutput.hasRemaining()) return;
+
+            connection.pendingOutput = null;
+            if (connection.closeAfterFlush) {
+                close(key);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private ByteBuffer append(ByteBuffer pending, ByteBuffer more) {
+            int existing = pending == null ? 0 : pending.remaining();
+            ByteBuffer combined = ByteBuffer.allocate(existing + more.remaining());
+            if (pending != null) combined.put(pending);
+            combined.put(more);
+            combined.flip();
+            return combined;
+        }
+
+        private void close(SelectionKey key) {
+            key.cancel();
+            // The key may already be cancelled after an error; the channel still has to be closed, once
+            if (!key.channel().isOpen()) return;
+            closeQuietly(key.channel());
+            openConnections.decrementAndGet();
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == value) return i;
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(java.nio.channels.Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing useful can be done if closing fails
+        }
+    }
+}
+
+/**
+ * Moves console logging off the connection threads. log() only queues the
+ * message; a daemon thread prints queued messages in batches. When the queue
+ * is full, messages are dropped and counted rather than slowing clients down.
+ */
+final class AsyncLog {
+    private static final BlockingQueue<String> QUEUE = new ArrayBlockingQueue<>(16 * 1024);
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final AtomicLong QUEUED = new AtomicLong();
+    private static volatile long printed;
+    private static final Thread WRITER = new Thread(AsyncLog::writeLoop, "AsyncLog");
+
+    static {
+        WRITER.setDaemon(true);
+        WRITER.start();
+    }
+
+    private AsyncLog() {
+    }
+
+    static void log(String message) {
+        if (QUEUE.offer(message)) {
+            QUEUED.incrementAndGet();
+        } else {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits until everything queued so far has been printed.
+     */
+    static void drain() {
+        long target = QUEUED.get();
+        while (printed < target) {
+            Thread.yield();
+        }
+    }
+
+    private static void writeLoop() {
+        List<String> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(QUEUE.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            QUEUE.drainTo(batch);
+
+            long dropped = DROPPED.getAndSet(0);
+            if (dropped > 0) text.append("(").append(dropped).append(" log messages dropped)\n");
+            for (String message : batch) text.append(message).append('\n');
+            System.out.print(text);
+            System.out.flush();
+            printed += batch.size();
+            batch.clear();
+            text.setLength(0);
+        }
+    }
+}
+
+/**
+ * Follows frame boundaries in a binary echo stream without copying it.
+ *
+ * A frame is a 4-byte big-endian length followed by that many bytes. The
+ * server echoes frames unchanged; an empty frame is echoed and then ends the
+ * session, like "bye" in text mode. Frames and headers may be split across
+ * reads, so the tracker keeps its position between calls to scan().
+ */
+final class FrameTracker {
+    static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    private int headerBytes;
+    private int length;
+    private int payloadLeft;
+    private boolean closed;
+
+    /**
+     * Advances over buffer[from, to) and returns where the bytes to echo end:
+     * normally to, or just after an empty frame. Returns -1 when a frame is
+     * longer than MAX_FRAME_LENGTH.
+     */
+    int scan(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        while (i < to) {
+            if (payloadLeft > 0) {
+                int skip = Math.min(payloadLeft, to - i);
+                payloadLeft -= skip;
+                i += skip;
+                continue;
+            }
+            length = (length << 8) | (buffer.get(i++) & 0xFF);
+            if (++headerBytes < 4) continue;
+
+            if (length < 0 || length > MAX_FRAME_LENGTH) return -1;
+            payloadLeft = length;
+            headerBytes = 0;
+            if (length == 0) {
+                closed = true;
+                return i;
+            }
+            length = 0;
+        }
+        return i;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
 }
@@ -1,15 +1,55 @@
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 public class EchoClient {
+    /**
+     * Usage:
+     *   java EchoClient                  interactive: echo lines typed on the console
+     *   java EchoClient bench [connections] [seconds] [closed|rate] [depth|messages per second]
+     *                         [payload bytes] [text|binary] [host] [port]
+     * In "closed" mode every connection keeps up to depth requests in flight. In
+     * "rate" mode the given total rate is spread evenly over the connections
+     * regardless of how fast replies come back. "binary" asks the server for
+     * length-prefixed frames and falls back to text lines if it declines.
+     */
     public static void main(String[] args) {
         String hostname = "127.0.0.1"; // Localhost
         int port = 5000; // Must match the server's port
 
+        if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+            int connections = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+            int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+            boolean openLoop = args.length > 3 && args[3].equalsIgnoreCase("rate");
+            int load = args.length > 4 ? Integer.parseInt(args[4]) : (openLoop ? 10_000 : 1);
+            int payloadBytes = args.length > 5 ? Integer.parseInt(args[5]) : 64;
+            boolean binary = args.length > 6 && args[6].equalsIgnoreCase("binary");
+            if (args.length > 7) hostname = args[7];
+            if (args.length > 8) port = Integer.parseInt(args[8]);
+            try {
+                new EchoLoadGenerator(hostname, port, connections, seconds, openLoop, load, payloadBytes, binary).run();
+            } catch (IOException e) {
+                System.out.println("I/O Error: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
         System.out.println("=== Echo Client Started ===");
 
         // 1. Connect to the server using a Socket
@@ -22,16 +62,16 @@ public class EchoClient {
             System.out.println("Connected to the Echo Server. Type a message (or 'bye' to exit):");
 
             String userInput;
-            
+
             // 2. Read from the console in a loop
             while ((userInput = consoleReader.readLine()) != null) {
                 // Send the message to the server
                 out.println(userInput);
-                
+
                 // Read the echoed response from the server
                 String serverResponse = in.readLine();
                 System.out.println(serverResponse);
-                
+
                 // Exit if the user types "bye"
                 if ("bye".equalsIgnoreCase(userInput)) {
                     break;
@@ -44,3 +84,312 @@ public class EchoClient {
         }
     }
 }
+
+/**
+ * Drives an echo server with many concurrent connections and reports
+ * throughput and round-trip latency percentiles.
+ *
+ * Each connection has a sender thread and a receiver thread. The sender stamps
+ * every request with the time it was meant to go out and the receiver measures
+ * the reply against that stamp. In rate mode the stamp is the scheduled send
+ * time, so a stalled server is charged for the requests that queued up behind
+ * the stall (the coordinated omission correction). In closed mode the sender
+ * waits for the server, so there is no intended schedule to measure against:
+ * its latencies are reported as measured and understate stalls.
+ */
+class EchoLoadGenerator {
+    private static final String RESPONSE_PREFIX = "Server Echo: ";
+    private static final String BINARY_REQUEST = "MODE BINARY";
+    private static final String BINARY_ACCEPTED = "OK BINARY";
+    // Largest number of requests one connection may have in flight in rate mode
+    private static final int MAX_IN_FLIGHT = 1 << 14;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int seconds;
+    private final boolean openLoop;
+    private final int load;
+    private final boolean binary;
+    private final byte[] textRequest;
+    private final byte[] frameRequest;
+
+    EchoLoadGenerator(String host, int port, int connections, int seconds,
+                      boolean openLoop, int load, int payloadBytes, boolean binary) {
+        if (connections < 1 || seconds < 1 || load < 1 || payloadBytes < 1) {
+            throw new IllegalArgumentException("Connections, seconds, load and payload size must be positive.");
+        }
+        if (!openLoop && load > MAX_IN_FLIGHT) {
+            throw new IllegalArgumentException("Pipelining depth cannot exceed " + MAX_IN_FLIGHT + ".");
+        }
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.seconds = seconds;
+        this.openLoop = openLoop;
+        this.load = load;
+        this.binary = binary;
+
+        // The payload must not be "bye" or the server would hang up
+        this.textRequest = new byte[payloadBytes + 1];
+        Arrays.fill(textRequest, (byte) 'x');
+        textRequest[payloadBytes] = '\n';
+
+        // A binary frame is a 4-byte big-endian length followed by the payload
+        this.frameRequest = ByteBuffer.allocate(4 + payloadBytes).putInt(payloadBytes)
+                .put(textRequest, 0, payloadBytes).array();
+    }
+
+    void run() throws IOException, InterruptedException {
+        System.out.printf("=== Echo Load: %d connections, %d s, %s, %s ===%n", connections, seconds,
+                openLoop ? load + " msg/s total" : "closed loop, depth " + load, binary ? "binary" : "text");
+
+        List<Connection> all = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) all.add(new Connection(i));
+        } catch (IOException e) {
+            for (Connection c : all) c.socket.close();
+            throw e;
+        }
+
+        // A short warm-up lets the JIT compile both ends before anything is recorded
+        long start = System.nanoTime() + 100_000_000L;
+        long measureFrom = start + Math.min(2, seconds / 5) * 1_000_000_000L;
+        long end = measureFrom + seconds * 1_000_000_000L;
+
+        List<Thread> threads = new ArrayList<>();
+        for (Connection c : all) {
+            threads.add(new Thread(() -> c.send(start, end), "Sender-" + c.id));
+            threads.add(new Thread(() -> c.receive(measureFrom, end), "Receiver-" + c.id));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+
+        RoundTripHistogram latency = new RoundTripHistogram();
+        int failed = 0;
+        int textFallbacks = 0;
+        for (Connection c : all) {
+            latency.add(c.latency);
+            if (c.failed) failed++;
+            if (binary && !c.framed) textFallbacks++;
+        }
+        if (textFallbacks > 0) {
+            System.out.println(textFallbacks + " connection(s) fell back to text: the server does not support binary frames.");
+        }
+
+        System.out.printf("Throughput: %,.0f msg/s (%,d replies in %d s)%n",
+                latency.count() / (double) seconds, latency.count(), seconds);
+        if (openLoop) {
+            print("Latency (from scheduled send)", latency);
+        } else {
+            print("Latency (measured)", latency);
+            System.out.println("Closed-loop latencies leave out requests a stalled server kept from being sent;"
+                    + " use rate mode to include them.");
+        }
+        if (failed > 0) System.out.println("Connections closed on error: " + failed);
+    }
+
+    private static void print(String label, RoundTripHistogram h) {
+        System.out.printf("%-30s p50 %,9d us   p99 %,9d us   p99.9 %,9d us   max %,9d us%n", label,
+                h.percentile(50) / 1000, h.percentile(99) / 1000, h.percentile(99.9) / 1000, h.max() / 1000);
+    }
+
+    /**
+     * One socket plus the state its sender and receiver threads share.
+     */
+    private final class Connection {
+        final int id;
+        final Socket socket;
+        final Semaphore inFlight;
+        // Intended send time of each outstanding request, indexed by sequence number
+        final AtomicLongArray sendTimes = new AtomicLongArray(MAX_IN_FLIGHT);
+        final RoundTripHistogram latency = new RoundTripHistogram();
+        volatile long sent = -1; // Published by the sender once it stops
+        volatile boolean failed;
+        final boolean framed;
+        final byte[] request;
+        final int responseLength;
+        final byte[] response; // Receive area for frames
+
+        Connection(int id) throws IOException {
+            this.id = id;
+            this.socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            this.inFlight = new Semaphore(openLoop ? MAX_IN_FLIGHT : load);
+            this.framed = binary && negotiateBinary();
+            this.request = framed ? frameRequest : textRequest;
+            // Frames come back unchanged; text lines come back with the echo prefix
+            this.responseLength = framed ? frameRequest.length : RESPONSE_PREFIX.length() + textRequest.length;
+            this.response = framed ? new byte[responseLength] : null;
+        }
+
+        /**
+         * Asks the server for binary frames. A server that only speaks text echoes
+         * the request back as an ordinary line, which means falling back to text.
+         */
+        private boolean negotiateBinary() throws IOException {
+            socket.getOutputStream().write((BINARY_REQUEST + "\n").getBytes(StandardCharsets.US_ASCII));
+            String reply = readLine(socket.getInputStream());
+            if (BINARY_ACCEPTED.equals(reply)) return true;
+            if ((RESPONSE_PREFIX + BINARY_REQUEST).equals(reply)) return false;
+            socket.close();
+            throw new IOException("Unexpected reply to binary mode request: " + reply);
+        }
+
+        void send(long start, long end) {
+            long interval = openLoop ? Math.max(1, 1_000_000_000L * connections / load) : 0;
+            // Spread the connections' schedules so they do not all fire at once
+            long scheduled = start + (openLoop ? interval * id / connections : 0);
+            long seq = 0;
+            try {
+                OutputStream out = socket.getOutputStream();
+                while (true) {
+                    long intended;
+                    if (openLoop) {
+                        intended = scheduled;
+                        scheduled += interval;
+                        parkUntil(intended);
+                    } else {
+                        parkUntil(start);
+                        inFlight.acquire();
+                        intended = System.nanoTime();
+                    }
+                    if (intended >= end) break;
+                    if (openLoop) inFlight.acquire();
+
+                    sendTimes.set((int) (seq & (MAX_IN_FLIGHT - 1)), intended);
+                    out.write(request);
+                    seq++;
+                }
+            } catch (IOException | InterruptedException e) {
+                failed = true;
+            } finally {
+                sent = seq;
+                // Half-closing tells the server we are done; it hangs up after the last reply
+                try {
+                    socket.shutdownOutput();
+                } catch (IOException ignored) {
+                    // The receiver notices the broken connection on its own
+                }
+            }
+        }
+
+        void receive(long measureFrom, long end) {
+            try (Socket s = socket) {
+                // A server that stops answering fails the connection instead of hanging the run
+                s.setSoTimeout(30_000);
+                InputStream in = new BufferedInputStream(s.getInputStream(), 64 * 1024);
+                for (long seq = 0; ; seq++) {
+                    if (!readResponse(in)) {
+                        // End of stream is expected once every request has been answered
+                        if (sent != seq) failed = true;
+                        return;
+                    }
+                    long now = System.nanoTime();
+                    long intended = sendTimes.get((int) (seq & (MAX_IN_FLIGHT - 1)));
+                    inFlight.release();
+
+                    if (intended >= measureFrom && intended < end) latency.record(now - intended);
+                }
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        /**
+         * Consumes one reply, returning false on end of stream or an unexpected reply.
+         * Only the length (or frame header) is checked; the content is not decoded.
+         */
+        private boolean readResponse(InputStream in) throws IOException {
+            if (framed) {
+                if (in.readNBytes(response, 0, responseLength) != responseLength) return false;
+                for (int i = 0; i < 4; i++) {
+                    if (response[i] != request[i]) return false;
+                }
+                return true;
+            }
+            for (int i = 0; i < responseLength; i++) {
+                int b = in.read();
+                if (b < 0) return false;
+                if (b == '\n') return i == responseLength - 1;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reads one '\n'-terminated line byte by byte, so nothing past it is consumed.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (b != '\r') line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
+
+/**
+ * Round-trip times for the bench report, in nanoseconds. Every power of two
+ * is split into 8 buckets, so a reported percentile is within 12.5% of the
+ * recorded value; that is plenty for p50/p99 and keeps each copy at 4 KB.
+ */
+class RoundTripHistogram {
+    private static final int STEPS = 8;
+
+    private final long[] counts = new long[64 * STEPS];
+    private long total;
+    private long max;
+
+    void record(long value) {
+        value = Math.max(0, value);
+        counts[bucket(value)]++;
+        total++;
+        max = Math.max(max, value);
+    }
+
+    void add(RoundTripHistogram other) {
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return total;
+    }
+
+    long max() {
+        return max;
+    }
+
+    long percentile(double percent) {
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    // Values below STEPS get their own bucket; above, a bucket is the power of two plus the next 3 bits
+    private static int bucket(long value) {
+        if (value < STEPS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        return (magnitude - 2) * STEPS + (int) (value >>> (magnitude - 3)) - STEPS;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < STEPS) return bucket;
+        int shift = bucket / STEPS - 1;
+        return ((long) (bucket % STEPS + STEPS + 1) << shift) - 1;
+    }
+}